@@ -7,6 +7,8 @@ import simpledb.transaction.TransactionId;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * @Xinhao
@@ -14,149 +16,669 @@ import java.util.concurrent.ConcurrentHashMap;
  * @Descrption
  */
 public class LockManager {
+    /**
+     * Lock modes of the granularity hierarchy table, page. A transaction
+     * takes an intention lock (IS, IX) on the table before locking one of
+     * its pages; SIX is S on the whole table plus the intention to write
+     * some of its pages.
+     * <p>
+     * The hierarchy stops at pages. Commit writes and abort restores whole
+     * pages, so two uncommitted writers of one page could only be kept
+     * apart with record-level undo, which the log does not have.
+     */
     public enum LockType{
-        SLock, XLock
+        ISLock, IXLock, SLock, SIXLock, XLock;
+
+        private static final boolean[][] COMPATIBLE = {
+                //        IS     IX     S      SIX    X
+                /* IS */ {true,  true,  true,  true,  false},
+                /* IX */ {true,  true,  false, false, false},
+                /* S  */ {true,  false, true,  false, false},
+                /* SIX*/ {true,  false, false, false, false},
+                /* X  */ {false, false, false, false, false},
+        };
+
+        /** Return true if one transaction may hold this mode while another holds other. */
+        public boolean compatible(LockType other){
+            return COMPATIBLE[ordinal()][other.ordinal()];
+        }
+
+        /** Return true if holding this mode grants everything other does. */
+        public boolean covers(LockType other){
+            switch (this){
+                case XLock:
+                    return true;
+                case SIXLock:
+                    return other != XLock;
+                case IXLock:
+                case SLock:
+                    return other == this || other == ISLock;
+                default:
+                    return other == ISLock;
+            }
+        }
+
+        /** Return the weakest mode that covers both this mode and other. */
+        public LockType combine(LockType other){
+            if (covers(other)){
+                return this;
+            }
+            if (other.covers(this)){
+                return other;
+            }
+            // S and IX
+            return SIXLock;
+        }
     }
 
-    class ObjLock{
-        LockType type;
-        Set<TransactionId> holders;
-        PageId pid;
+    /** Lock key for a whole table; pages are locked by their PageId. */
+    public static final class TableKey{
+        final int tableId;
 
-        public ObjLock(LockType type, PageId pid){
-            this.type = type;
-            this.pid = pid;
-            holders = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        public TableKey(int tableId){
+            this.tableId = tableId;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            return o instanceof TableKey && ((TableKey) o).tableId == tableId;
+        }
+
+        @Override
+        public int hashCode(){
+            return Integer.hashCode(tableId) * 31 + 7;
+        }
+
+        @Override
+        public String toString(){
+            return "table " + tableId;
         }
+    }
+
+    /**
+     * How blocked transactions are kept from waiting for each other forever.
+     * The prevention policies order transactions by age, the id of their
+     * TransactionId (smaller is older), and only let waits go one way between
+     * ages, so that no cycle of waits can form.
+     */
+    public enum DeadlockPolicy{
+        /** Abort a transaction that has waited longer than the lock timeout. */
+        TIMEOUT,
+        /** Abort the youngest transaction of a cycle in the waits-for graph as soon as it closes. */
+        DETECT,
+        /** An older requester waits for younger holders; a younger one aborts (dies) rather than wait for an older one. */
+        WAIT_DIE,
+        /** An older requester aborts (wounds) the younger holders in its way; a younger one waits for older ones. */
+        WOUND_WAIT
+    }
 
-        public void addHolder(TransactionId tid){
-            holders.add(tid);
+    /** Default number of shards; locks on pages in different shards never contend. */
+    public static final int DEFAULT_SHARDS = 16;
+    /**
+     * Default number of page locks a transaction may hold on one table
+     * before they are escalated: 0, escalation is off. A table lock blocks
+     * every other writer of the table, so it is left to the caller to opt in.
+     */
+    public static final int DEFAULT_ESCALATION_THRESHOLD = 0;
+    /** Default time a transaction may wait for a lock under {@link DeadlockPolicy#TIMEOUT}. */
+    public static final long DEFAULT_LOCK_TIMEOUT_MILLIS = 1000;
+
+    class ObjLock{
+        /** Each holder's mode; a holder converts its mode in place. */
+        final Map<TransactionId, LockType> holders = new ConcurrentHashMap<>();
+        final Object key;
+        /**
+         * Requests blocked on this lock in the order they are granted:
+         * conversions of locks already held first, then new requests by
+         * arrival. Changed only under the shard; the deadlock search reads it
+         * from other shards.
+         */
+        final Deque<Waiter> waiters = new ConcurrentLinkedDeque<>();
+
+        public ObjLock(Object key){
+            this.key = key;
         }
 
         public Set<TransactionId> getHolders() {
-            return holders;
+            return holders.keySet();
         }
 
-        public LockType getType() {
-            return type;
+        /** Return true if tid could hold type on this lock alongside the other holders. */
+        boolean compatible(TransactionId tid, LockType type){
+            for (Map.Entry<TransactionId, LockType> h : holders.entrySet()){
+                if (!h.getKey().equals(tid) && !type.compatible(h.getValue())){
+                    return false;
+                }
+            }
+            return true;
         }
 
-        public void setType(LockType type) {
+    }
+
+    /** A transaction parked until the lock it waits for is granted to it. */
+    static class Waiter{
+        final TransactionId tid;
+        final Thread thread;
+        final ObjLock lock;
+        /** The mode tid would hold once granted. */
+        final LockType type;
+        /** Set, under the shard, when the lock is handed to tid as it leaves the queue. */
+        volatile boolean granted = false;
+
+        Waiter(TransactionId tid, ObjLock lock, LockType type){
+            this.tid = tid;
+            this.thread = Thread.currentThread();
+            this.lock = lock;
             this.type = type;
         }
+    }
 
+    /** The locks one transaction holds. */
+    static class TxnLocks{
+        final Set<Object> keys = ConcurrentHashMap.newKeySet();
+        /** Per table id: page locks held, and the count at which to try escalating next. Guarded by this. */
+        final Map<Integer, int[]> pagesPerTable = new HashMap<>();
     }
 
-    private ConcurrentHashMap<PageId, ObjLock> lockTable;
-    private ConcurrentHashMap<TransactionId,ArrayList<PageId>> transactionTable;
+    /** The locks whose keys hash to one shard, guarded by the shard's monitor. */
+    class Shard{
+        final ConcurrentHashMap<Object, ObjLock> lockTable = new ConcurrentHashMap<>();
 
-    public LockManager(){
-        lockTable = new ConcurrentHashMap<>();
-        transactionTable = new ConcurrentHashMap<>();
-    }
-
-    public synchronized void acquireLock(TransactionId tid, PageId pid, LockType type)throws TransactionAbortedException{
-
-            if (holdsLock(tid, pid)){
-                //If the transaction holds the lock already
-                long startTime = System.currentTimeMillis();
-                while (true){
-                    if (type==LockType.XLock&&lockTable.get(pid).getType()==LockType.SLock){
-                        if (lockTable.get(pid).holders.size()==1){
-                            upgradeLock(pid);
-                        }else {
-                            block(tid,startTime);
-                            continue;
-                        }
-                    }
+        /**
+         * Grant tid the lock if it is compatible with the locks already held
+         * and, unless tid converts a lock it holds, no request is queued ahead
+         * of it; a stream of shared requests must not overtake a queued
+         * exclusive one.
+         */
+        boolean grant(TransactionId tid, Object key, LockType type){
+            ObjLock lock = lockTable.computeIfAbsent(key, ObjLock::new);
+            LockType held = lock.holders.get(tid);
+            if (held != null && held.covers(type)){
+                return true;
+            }
+            LockType want = held == null ? type : held.combine(type);
+            if ((held == null && !lock.waiters.isEmpty()) || !lock.compatible(tid, want)){
+                return false;
+            }
+            lock.holders.put(tid, want);
+            if (held != null && !lock.waiters.isEmpty()){
+                overtook(tid, want, lock.waiters);
+            }
+            return true;
+        }
+
+        /**
+         * Queue tid's request for type on lock. A conversion goes ahead of new
+         * requests: its transaction already holds the lock, so queueing it
+         * behind a request that conflicts with that lock would deadlock.
+         */
+        Waiter enqueue(TransactionId tid, ObjLock lock, LockType type){
+            LockType mine = lock.holders.get(tid);
+            Waiter waiter = new Waiter(tid, lock, mine == null ? type : mine.combine(type));
+            if (mine == null){
+                lock.waiters.addLast(waiter);
+            }else {
+                lock.waiters.addFirst(waiter);
+            }
+            return waiter;
+        }
+
+        /**
+         * Grant queued requests from the head of lock's queue for as long as
+         * they are compatible with the holders, handing each its lock and
+         * waking just its transaction: consecutive shared requests are granted
+         * together, an exclusive one only alone.
+         */
+        void grantWaiters(ObjLock lock){
+            Iterator<Waiter> it = lock.waiters.iterator();
+            while (it.hasNext()){
+                Waiter w = it.next();
+                if (!lock.compatible(w.tid, w.type)){
                     return;
                 }
+                lock.holders.put(w.tid, w.type);
+                w.granted = true;
+                it.remove();
+                LockSupport.unpark(w.thread);
+            }
+        }
+
+        /** Drop tid's lock on key and hand it on to the requests queued for it. */
+        boolean release(TransactionId tid, Object key){
+            ObjLock lock = lockTable.get(key);
+            if (lock == null || lock.holders.remove(tid) == null){
+                return false;
+            }
+            grantWaiters(lock);
+            releaseIfUnused(lock);
+            return true;
+        }
 
+        void releaseIfUnused(ObjLock lock){
+            if (lock.holders.isEmpty() && lock.waiters.isEmpty()){
+                lockTable.remove(lock.key);
             }
-            long startTime = System.currentTimeMillis();
-            while (true) {
-                if (lockTable.containsKey(pid)) {
-                    //Condition where there is an existing lock.
-                    ObjLock lock = lockTable.get(pid);
-                    if (lock.getType() == LockType.SLock && type == LockType.SLock) {
-                        lock.addHolder(tid);
-                        updateTransactionTable(tid, pid);
+        }
+    }
+
+    private final Shard[] shards;
+    /** The keys each transaction holds a lock on, so its locks are released in O(locks held). */
+    private final ConcurrentHashMap<TransactionId, TxnLocks> transactionTable = new ConcurrentHashMap<>();
+    /** Page locks a transaction may hold on one table before they are traded for a table lock; 0 never escalates. */
+    private volatile int escalationThreshold = DEFAULT_ESCALATION_THRESHOLD;
+    /**
+     * Waits-for graph: each blocked transaction, with the lock it waits for.
+     * It waits for that lock's holders, and the requests queued ahead of it,
+     * whose modes conflict with the one it wants, so the edges follow the
+     * holders and queues as locks are granted and released.
+     */
+    private final ConcurrentHashMap<TransactionId, Waiter> waiting = new ConcurrentHashMap<>();
+    /** Blocked transactions chosen as deadlock victims that have not woken up yet. */
+    private final Set<TransactionId> victims = ConcurrentHashMap.newKeySet();
+    /**
+     * Serializes deadlock searches, so that of two transactions closing a
+     * cycle at once in different shards the second sees the first waiting.
+     * Taken inside a shard's monitor; never takes one itself.
+     */
+    private final Object detector = new Object();
+    private volatile DeadlockPolicy deadlockPolicy = DeadlockPolicy.DETECT;
+    private volatile long lockTimeoutMillis = DEFAULT_LOCK_TIMEOUT_MILLIS;
+    /**
+     * Transactions wounded by an older one under WOUND_WAIT. A wounded
+     * transaction aborts when it next blocks (at once if it is blocked
+     * already); one that finishes without blocking again just commits.
+     */
+    private final Set<TransactionId> wounded = ConcurrentHashMap.newKeySet();
+
+    public LockManager(){
+        this(DEFAULT_SHARDS);
+    }
+
+    /** Create a lock manager whose lock table is split into numShards independently latched shards. */
+    public LockManager(int numShards){
+        shards = new Shard[Math.max(1, numShards)];
+        for (int i = 0; i < shards.length; i++){
+            shards[i] = new Shard();
+        }
+    }
+
+    Shard shardFor(Object key){
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return shards[(h & 0x7fffffff) % shards.length];
+    }
+
+    /**
+     * Acquire a lock of the given type on key (a TableKey or PageId) for
+     * tid, blocking while another transaction holds a conflicting lock or
+     * an earlier request is queued for it; requests are granted in arrival
+     * order. A lock tid already holds is converted in place to the weakest
+     * mode covering both. Locking the table above a page is up to the
+     * caller. Page locks beyond the escalation threshold on one table are
+     * traded for a lock on the table.
+     *
+     * @throws TransactionAbortedException if waiting would deadlock and tid
+     *         is chosen as the victim. tid keeps the locks it holds; the
+     *         caller must abort it.
+     */
+    public void acquireLock(TransactionId tid, Object key, LockType type)throws TransactionAbortedException{
+        LockType held = getLockType(tid, key);
+        if (held != null && held.covers(type)){
+            return;
+        }
+        Shard shard = shardFor(key);
+        Waiter waiter = null;
+        long deadline = 0;
+        boolean added;
+        try {
+            while (true){
+                synchronized (shard){
+                    if (waiter == null ? shard.grant(tid, key, type) : waiter.granted){
+                        added = updateTransactionTable(tid, key);
                         break;
-                    } else {// Wait until other transactions release locks.
-                        block(tid,startTime);
                     }
-                } else {//Condition where there is no lock on the page
-                    ObjLock toAdd = new ObjLock(type, pid);
-                    toAdd.addHolder(tid);
-                    lockTable.put(pid, toAdd);
-                    updateTransactionTable(tid, pid);
-                    break;
+                    if (waiter == null){
+                        waiter = shard.enqueue(tid, shard.lockTable.get(key), type);
+                        waiting.put(tid, waiter);
+                        deadline = System.nanoTime() + lockTimeoutMillis * 1000000;
+                    }else if (victims.remove(tid) || wounded.contains(tid) || Thread.interrupted()){
+                        throw new TransactionAbortedException();
+                    }
+                    beforeBlocking(waiter, deadline);
+                }
+                if (deadlockPolicy == DeadlockPolicy.TIMEOUT){
+                    LockSupport.parkNanos(this, deadline - System.nanoTime());
+                }else {
+                    LockSupport.park(this);
                 }
             }
-
+        }finally {
+            if (waiter != null){
+                synchronized (shard){
+                    waiting.remove(tid);
+                    // chosen too late: the cycle broke anyway
+                    victims.remove(tid);
+                    if (waiter.granted){
+                        // granted after tid gave up: record it so tid's abort releases it
+                        updateTransactionTable(tid, key);
+                    }else if (waiter.lock.waiters.remove(waiter)){
+                        // requests queued behind this one may be grantable now
+                        shard.grantWaiters(waiter.lock);
+                    }
+                    shard.releaseIfUnused(waiter.lock);
+                }
+            }
+        }
+        if (added && key instanceof PageId){
+            maybeEscalate(tid, ((PageId) key).getTableId());
+        }
     }
 
-    public void updateTransactionTable(TransactionId tid, PageId pid){
-        if (transactionTable.containsKey(tid)){
-            transactionTable.get(tid).add(pid);
-        }else {
-            ArrayList<PageId> toAdd = new ArrayList<>();
-            toAdd.add(pid);
-            transactionTable.put(tid,toAdd);
+    /**
+     * Grant tid a lock on key if it is compatible with the locks already held,
+     * and return false instead of blocking if it is not.
+     */
+    public boolean tryAcquireLock(TransactionId tid, Object key, LockType type){
+        Shard shard = shardFor(key);
+        synchronized (shard){
+            if (!shard.grant(tid, key, type)){
+                shard.releaseIfUnused(shard.lockTable.get(key));
+                return false;
+            }
         }
+        updateTransactionTable(tid, key);
+        return true;
     }
 
-    public void upgradeLock(PageId pid){
-        lockTable.get(pid).setType(LockType.XLock);
+    /** Record that tid holds a lock on key; return true if it did not before. */
+    public boolean updateTransactionTable(TransactionId tid, Object key){
+        TxnLocks locks = transactionTable.computeIfAbsent(tid, t -> new TxnLocks());
+        if (!locks.keys.add(key)){
+            return false;
+        }
+        if (key instanceof PageId){
+            synchronized (locks){
+                int threshold = escalationThreshold;
+                locks.pagesPerTable.computeIfAbsent(((PageId) key).getTableId(), t -> new int[] {0, threshold})[0]++;
+            }
+        }
+        return true;
     }
 
-    public synchronized void block(TransactionId tid, long start) throws TransactionAbortedException{
-        try {
-            wait(100);
-            if (System.currentTimeMillis()-start > 1000){
-                releaseTransaction(tid);
-                throw new TransactionAbortedException();
+    private void forget(TxnLocks locks, Object key){
+        if (locks.keys.remove(key) && key instanceof PageId){
+            synchronized (locks){
+                int[] count = locks.pagesPerTable.get(((PageId) key).getTableId());
+                if (count != null){
+                    count[0]--;
+                }
             }
-        }catch (InterruptedException e){
-            e.printStackTrace();
         }
+    }
 
+    /** Return the number of page locks a transaction may hold on one table before they are escalated. */
+    public int getEscalationThreshold(){
+        return escalationThreshold;
     }
 
-    public synchronized void releaseLock(TransactionId tid, PageId pid){
-        ObjLock toRelease = lockTable.get(pid);
-        Set<TransactionId> holders = toRelease.getHolders();
-        if (holders.contains(tid)){
-            holders.remove(tid);
-            transactionTable.get(tid).remove(pid);
+    /**
+     * Set the number of page locks a transaction may hold on one table
+     * before they are traded for a single table lock; 0 turns escalation off.
+     */
+    public void setEscalationThreshold(int threshold){
+        escalationThreshold = Math.max(0, threshold);
+    }
+
+    /**
+     * If tid holds more page locks on tableId than the threshold, take a
+     * table lock covering them (S, or X if any of them is exclusive) and
+     * drop its page locks on the table. Escalation never waits: if
+     * another transaction holds a conflicting table lock, tid keeps its page
+     * locks and tries again once it holds another threshold's worth.
+     */
+    private void maybeEscalate(TransactionId tid, int tableId){
+        int threshold = escalationThreshold;
+        TxnLocks locks = transactionTable.get(tid);
+        if (threshold <= 0 || locks == null){
+            return;
+        }
+        synchronized (locks){
+            int[] count = locks.pagesPerTable.get(tableId);
+            if (count == null || count[0] <= count[1]){
+                return;
+            }
+            count[1] = count[0] + threshold;
         }
-        if (holders.isEmpty()){
-            lockTable.remove(pid);
-            transactionTable.get(tid).remove(pid);
-            if (transactionTable.get(tid).size()==0){
-                transactionTable.remove(tid);
+        List<Object> covered = new ArrayList<>();
+        LockType mode = LockType.SLock;
+        for (Object key : locks.keys){
+            if (key instanceof PageId && ((PageId) key).getTableId() == tableId){
+                covered.add(key);
+                LockType held = getLockType(tid, key);
+                if (held != null && held != LockType.SLock && held != LockType.ISLock){
+                    mode = LockType.XLock;
+                }
             }
-            notifyAll();
         }
+        if (!tryAcquireLock(tid, new TableKey(tableId), mode)){
+            return;
+        }
+        for (Object key : covered){
+            releaseLock(tid, key);
+        }
+    }
+
+    /** Return how blocked transactions are kept from deadlocking. */
+    public DeadlockPolicy getDeadlockPolicy(){
+        return deadlockPolicy;
+    }
+
+    /**
+     * Choose how blocked transactions are kept from deadlocking; DETECT by
+     * default. Set it while no transaction is blocked. Note that an aborted
+     * transaction is retried with a new, younger TransactionId, so under the
+     * prevention policies a retry does not keep its place in line.
+     */
+    public void setDeadlockPolicy(DeadlockPolicy policy){
+        deadlockPolicy = policy;
+    }
+
+    /** Return how long a transaction may wait for a lock under TIMEOUT. */
+    public long getLockTimeout(){
+        return lockTimeoutMillis;
+    }
+
+    /** Set how long a transaction may wait for a lock under TIMEOUT before it is aborted. */
+    public void setLockTimeout(long millis){
+        lockTimeoutMillis = Math.max(0, millis);
+    }
 
+    /**
+     * Called, holding the shard, each time the transaction of waiter is about
+     * to block: throw if under the deadlock policy it must abort instead.
+     */
+    private void beforeBlocking(Waiter waiter, long deadline) throws TransactionAbortedException{
+        TransactionId tid = waiter.tid;
+        switch (deadlockPolicy){
+            case TIMEOUT:
+                if (System.nanoTime() - deadline >= 0){
+                    throw new TransactionAbortedException();
+                }
+                break;
+            case DETECT:
+                checkDeadlock(tid);
+                break;
+            case WAIT_DIE:
+                for (TransactionId holder : blockers(waiter)){
+                    if (holder.getId() < tid.getId()){
+                        throw new TransactionAbortedException();
+                    }
+                }
+                overtook(tid, waiter.type, queuedBehind(waiter));
+                break;
+            case WOUND_WAIT:
+                overtook(tid, waiter.type, queuedBehind(waiter));
+                if (wounded.contains(tid)){
+                    throw new TransactionAbortedException();
+                }
+                for (TransactionId holder : blockers(waiter)){
+                    if (holder.getId() > tid.getId() && wounded.add(holder)){
+                        Waiter blocked = waiting.get(holder);
+                        if (blocked != null){
+                            LockSupport.unpark(blocked.thread);
+                        }
+                    }
+                }
+                break;
+        }
     }
 
-    public synchronized void releaseTransaction(TransactionId tid){
-        if (transactionTable.containsKey(tid)){
-            ArrayList<PageId> pages = transactionTable.get(tid);
-            for (int i=0;i<pages.size();i++){
-                releaseLock(tid, pages.get(i));
+    /**
+     * Return the transactions waiter waits for: the holders of its lock, and
+     * the requests queued ahead of it, whose modes conflict with the one it
+     * wants.
+     */
+    private List<TransactionId> blockers(Waiter waiter){
+        List<TransactionId> blocking = new ArrayList<>();
+        for (Map.Entry<TransactionId, LockType> h : waiter.lock.holders.entrySet()){
+            if (!h.getKey().equals(waiter.tid) && !waiter.type.compatible(h.getValue())){
+                blocking.add(h.getKey());
             }
-        }else {
+        }
+        for (Waiter ahead : waiter.lock.waiters){
+            if (ahead == waiter){
+                break;
+            }
+            if (!ahead.tid.equals(waiter.tid) && !waiter.type.compatible(ahead.type)){
+                blocking.add(ahead.tid);
+            }
+        }
+        return blocking;
+    }
+
+    /** Return the requests queued behind waiter. */
+    private List<Waiter> queuedBehind(Waiter waiter){
+        List<Waiter> behind = new ArrayList<>();
+        boolean after = false;
+        for (Waiter w : waiter.lock.waiters){
+            if (after){
+                behind.add(w);
+            }
+            after |= w == waiter;
+        }
+        return behind;
+    }
+
+    /**
+     * Called, holding the shard, when tid converting its lock to mode goes
+     * ahead of the queued requests passed, which then wait for it too. The
+     * prevention policies must allow those waits: under WAIT_DIE younger
+     * requests conflicting with mode die, under WOUND_WAIT an older one
+     * wounds tid.
+     */
+    void overtook(TransactionId tid, LockType mode, Collection<Waiter> passed){
+        DeadlockPolicy policy = deadlockPolicy;
+        if (policy != DeadlockPolicy.WAIT_DIE && policy != DeadlockPolicy.WOUND_WAIT){
             return;
         }
+        for (Waiter w : passed){
+            if (w.tid.equals(tid) || mode.compatible(w.type)){
+                continue;
+            }
+            if (policy == DeadlockPolicy.WAIT_DIE && w.tid.getId() > tid.getId()){
+                victims.add(w.tid);
+                LockSupport.unpark(w.thread);
+            }else if (policy == DeadlockPolicy.WOUND_WAIT && w.tid.getId() < tid.getId()){
+                wounded.add(tid);
+            }
+        }
     }
 
-    public boolean holdsLock(TransactionId tid, PageId pid){
-        if (lockTable.containsKey(pid)){
-        return lockTable.get(pid).getHolders().contains(tid);
+    /**
+     * If tid, now blocked, closes cycles in the waits-for graph, abort the
+     * youngest transaction of each: tid itself by throwing, or another
+     * blocked one by waking it up to throw. tid may close several cycles at
+     * once, so the search repeats until none is left; victims count as no
+     * longer blocked.
+     */
+    private void checkDeadlock(TransactionId tid) throws TransactionAbortedException{
+        synchronized (detector){
+            while (true){
+                List<TransactionId> cycle = new ArrayList<>();
+                if (!findPath(tid, tid, new HashSet<>(), cycle)){
+                    return;
+                }
+                TransactionId victim = tid;
+                for (TransactionId t : cycle){
+                    if (t.getId() > victim.getId()){
+                        victim = t;
+                    }
+                }
+                if (victim.equals(tid)){
+                    throw new TransactionAbortedException();
+                }
+                victims.add(victim);
+                LockSupport.unpark(waiting.get(victim).thread);
+            }
+        }
+    }
+
+    private boolean findPath(TransactionId from, TransactionId to, Set<TransactionId> visited, List<TransactionId> path){
+        Waiter w = waiting.get(from);
+        if (w == null || w.granted || victims.contains(from)){
+            // not blocked, or about to give up its locks
+            return false;
+        }
+        for (TransactionId holder : blockers(w)){
+            if (holder.equals(to) || (visited.add(holder) && findPath(holder, to, visited, path))){
+                path.add(from);
+                return true;
+            }
         }
         return false;
     }
 
+    public void releaseLock(TransactionId tid, Object key){
+        Shard shard = shardFor(key);
+        synchronized (shard){
+            shard.release(tid, key);
+        }
+        TxnLocks locks = transactionTable.get(tid);
+        if (locks != null){
+            forget(locks, key);
+        }
+    }
+
+    public void releaseTransaction(TransactionId tid){
+        TxnLocks locks = transactionTable.remove(tid);
+        if (locks != null){
+            for (Object key : locks.keys){
+                Shard shard = shardFor(key);
+                synchronized (shard){
+                    shard.release(tid, key);
+                }
+            }
+        }
+        // after the locks, so no wound can come in later
+        wounded.remove(tid);
+    }
+
+    /** Return the mode tid holds on key itself, or null if it holds none. */
+    public LockType getLockType(TransactionId tid, Object key){
+        ObjLock lock = shardFor(key).lockTable.get(key);
+        return lock == null ? null : lock.holders.get(tid);
+    }
+
+    /**
+     * Return true if tid may read the page: it holds a lock on the page
+     * itself, or a shared or exclusive lock on the page's whole table.
+     */
+    public boolean holdsLock(TransactionId tid, PageId pid){
+        if (getLockType(tid, pid) != null){
+            return true;
+        }
+        LockType table = getLockType(tid, new TableKey(pid.getTableId()));
+        return table != null && table.covers(LockType.SLock);
+    }
+
 }
@@ -3,6 +3,9 @@ package simpledb.common;
 import simpledb.common.Type;
 import simpledb.storage.DbFile;
 import simpledb.storage.HeapFile;
+import simpledb.storage.MappedHeapFile;
+import simpledb.storage.PaxHeapFile;
+import simpledb.storage.SlottedHeapFile;
 import simpledb.storage.TupleDesc;
 
 import java.io.BufferedReader;
@@ -145,11 +148,26 @@ public class Catalog {
     /** Delete all tables from the catalog */
     public void clear() {
         // some code goes here
+        for (Table table : tables.values()){
+            try {
+                table.file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         tables.clear();
     }
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line has the form
+     * <pre>
+     *     name (field type [pk], field type [pk], ...) [mmap|slotted|pax]
+     * </pre>
+     * where a trailing <code>mmap</code> loads the table as a {@link MappedHeapFile}
+     * (for read-mostly tables), <code>slotted</code> as a {@link SlottedHeapFile}
+     * (variable-length records) and <code>pax</code> as a {@link PaxHeapFile}
+     * (values grouped by column within each page) instead of a plain {@link HeapFile}.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -190,7 +208,22 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                String mode = line.substring(line.indexOf(")") + 1).trim();
+                File tabFile = new File(baseFolder+"/"+name + ".dat");
+                HeapFile tabHf;
+                if (mode.isEmpty()) {
+                    tabHf = new HeapFile(tabFile, t);
+                } else if (mode.equalsIgnoreCase("mmap")) {
+                    tabHf = new MappedHeapFile(tabFile, t);
+                } else if (mode.equalsIgnoreCase("slotted")) {
+                    tabHf = new SlottedHeapFile(tabFile, t);
+                } else if (mode.equalsIgnoreCase("pax")) {
+                    tabHf = new PaxHeapFile(tabFile, t);
+                } else {
+                    System.out.println("Unknown table mode " + mode);
+                    System.exit(0);
+                    return;
+                }
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
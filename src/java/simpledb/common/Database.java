@@ -2,9 +2,11 @@ package simpledb.common;
 
 import simpledb.storage.BufferPool;
 import simpledb.storage.LogFile;
+import simpledb.storage.ReplacementPolicy;
 
 import java.io.*;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
 
 /**
  * Database is a class that initializes several static variables used by the
@@ -58,11 +60,31 @@ public class Database {
      * return it
      */
     public static BufferPool resetBufferPool(int pages) {
+        return resetBufferPool(pages, BufferPool.DEFAULT_PARTITIONS);
+    }
+
+    /**
+     * Method used for testing -- create a new instance of the buffer pool,
+     * split into the given number of partitions, and return it
+     */
+    public static BufferPool resetBufferPool(int pages, int partitions) {
+        return resetBufferPool(new BufferPool(pages, partitions));
+    }
+
+    /**
+     * Method used for testing -- create a new instance of the buffer pool
+     * whose partitions evict with the given replacement policy, and return it
+     */
+    public static BufferPool resetBufferPool(int pages, int partitions, IntFunction<ReplacementPolicy> policy) {
+        return resetBufferPool(new BufferPool(pages, partitions, policy));
+    }
+
+    private static BufferPool resetBufferPool(BufferPool bufferPool) {
         java.lang.reflect.Field bufferPoolF=null;
         try {
             bufferPoolF = Database.class.getDeclaredField("_bufferpool");
             bufferPoolF.setAccessible(true);
-            bufferPoolF.set(_instance.get(), new BufferPool(pages));
+            bufferPoolF.set(_instance.get(), bufferPool);
         } catch (NoSuchFieldException | IllegalAccessException | IllegalArgumentException | SecurityException e) {
             e.printStackTrace();
         }
@@ -72,6 +94,8 @@ public class Database {
 
     // reset the database, used for unit tests only.
     public static void reset() {
+        // close the old tables' file handles
+        _instance.get()._catalog.clear();
         _instance.set(new Database());
     }
 
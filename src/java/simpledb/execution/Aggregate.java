@@ -118,11 +118,13 @@ public class Aggregate extends Operator {
     public void open() throws NoSuchElementException, DbException,
             TransactionAbortedException {
         // some code goes here
-        opIterator = aggregator.iterator();
-        opIterator.open();
+        child.open();
         while (child.hasNext()){
             aggregator.mergeTupleIntoGroup(child.next());
         }
+        // the iterator reads the results, so it is made once all rows are merged
+        opIterator = aggregator.iterator();
+        opIterator.open();
         super.open();
     }
 
@@ -184,6 +186,7 @@ public class Aggregate extends Operator {
     public void close() {
         // some code goes here
         opIterator.close();
+        child.close();
         opIterator = null;
         super.close();
     }
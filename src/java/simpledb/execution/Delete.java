@@ -75,7 +75,7 @@ public class Delete extends Operator {
         int count = 0;
         while (child.hasNext()){
             try {
-                Tuple toDelete = child.next();
+                Tuple toDelete = child.next().materialize();
                 Database.getBufferPool().deleteTuple(t, toDelete);
                 count++;
             }catch (IOException e){
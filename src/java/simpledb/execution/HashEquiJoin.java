@@ -62,7 +62,8 @@ public class HashEquiJoin extends Operator {
         int cnt = 0;
         map.clear();
         while (child1.hasNext()) {
-            t1 = child1.next();
+            // kept in the map after child1 moves on
+            t1 = child1.next().materialize();
             List<Tuple> list = map.computeIfAbsent(t1.getField(pred.getField1()), k -> new ArrayList<>());
             list.add(t1);
             if (cnt++ == MAP_SIZE)
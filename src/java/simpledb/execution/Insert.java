@@ -93,7 +93,7 @@ public class Insert extends Operator {
         int count = 0;
         while (child.hasNext()){
             try {
-                Database.getBufferPool().insertTuple(t, tableId, child.next());
+                Database.getBufferPool().insertTuple(t, tableId, child.next().materialize());
                 count++;
             }catch (IOException e){
                 e.printStackTrace();
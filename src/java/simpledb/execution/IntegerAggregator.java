@@ -18,12 +18,10 @@ public class IntegerAggregator implements Aggregator {
     private int afield;
     private Op what;
     private boolean grouping;
-
-    private Map<Field, List<Tuple>> groupMap;
-    private List<Tuple> noGroupList;
+    /** Per group value: the running min, max or sum of the group, and its number of rows. */
+    private Map<Field, int[]> groups;
+    private final int[] noGroup = new int[2];
     private TupleDesc td;
-    private Map<Field, Integer> resultGroup = new HashMap<>();
-    private Integer singleResult;
 
      /**
      * Aggregate constructor
@@ -49,11 +47,10 @@ public class IntegerAggregator implements Aggregator {
         Type[] types;
 
         if (gbfieldtype==null){
-            noGroupList = new ArrayList<>();
             types= new Type[]{Type.INT_TYPE};
             grouping = false;
         }else {
-            groupMap = new HashMap<>();
+            groups = new HashMap<>();
             types = new Type[]{gbfieldtype, Type.INT_TYPE};
             grouping = true;
         }
@@ -63,7 +60,8 @@ public class IntegerAggregator implements Aggregator {
 
     /**
      * Merge a new tuple into the aggregate, grouping as indicated in the
-     * constructor
+     * constructor. Only running values are kept, not the tuple, so tup may
+     * be a {@link TupleView} that moves on afterwards.
      * 
      * @param tup
      *            the Tuple containing an aggregate field and a group-by field
@@ -71,97 +69,36 @@ public class IntegerAggregator implements Aggregator {
     @Override
     public void mergeTupleIntoGroup(Tuple tup) {
         // some code goes here
-
+        int[] state = noGroup;
         if (grouping){
             Field gb = tup.getField(gbfield);
-            Tuple toMerge = new Tuple(td);
-            toMerge.setField(0, tup.getField(gbfield));
-            toMerge.setField(1, tup.getField(afield));
-
-            if (groupMap.containsKey(gb)){
-                groupMap.get(gb).add(toMerge);
-            }else {
-                ArrayList<Tuple> newList = new ArrayList<>();
-                newList.add(toMerge);
-                groupMap.put(gb,newList);
+            state = groups.get(gb);
+            if (state == null){
+                state = new int[2];
+                groups.put(gb, state);
             }
-            groupHandler(toMerge);
-        }else {
-            Tuple toMerge = new Tuple(td);
-            toMerge.setField(0, tup.getField(afield));
-            noGroupList.add(toMerge);
-            noGroupHandler(toMerge);
         }
-
-
-    }
-
-    private void noGroupHandler(Tuple tup){
-        int value = ((IntField)tup.getField(afield)).getValue();
-
-        switch (what){
-            case MIN: if(singleResult==null){
-                singleResult = value;
-            }else {
-                singleResult = Math.min(singleResult,value);
-            }break;
-            case MAX: if(singleResult==null){
-                singleResult = value;
-            }else {
-                singleResult = Math.max(singleResult,value);
-            }break;
-            case AVG: if(singleResult==null){
-                singleResult = value;
-            }else {
-                singleResult = (singleResult * (noGroupList.size()-1) + value)/(noGroupList.size());
-            }break;
-            case SUM: if(singleResult==null){
-                singleResult = value;
-            }else {
-                singleResult += value;
-            }break;
-            case COUNT: if(singleResult==null){
-                singleResult = 1;
-            }else {
-                singleResult ++;
+        int value = tup.getInt(afield);
+        if (state[1] == 0){
+            state[0] = value;
+        }else {
+            switch (what){
+                case MIN: state[0] = Math.min(state[0], value); break;
+                case MAX: state[0] = Math.max(state[0], value); break;
+                case SUM:
+                case AVG: state[0] += value; break;
             }
         }
+        state[1]++;
     }
 
-    private void groupHandler(Tuple tuple){
-        Field key = tuple.getField(gbfield);
-        int value = ((IntField)tuple.getField(afield)).getValue();
-        if (!resultGroup.containsKey(key)){
-            resultGroup.put(key,null);
-
-        }
-
-        Integer exist = resultGroup.get(key);
-
+    /** The aggregate value of a group with the given running state. */
+    private int result(int[] state) {
         switch (what){
-            case MIN:if (exist==null||exist>value){
-                resultGroup.put(key,value);
-            }break;
-            case MAX:if (exist==null||exist<value){
-                resultGroup.put(key,value);
-            }break;
-            case AVG:if (exist==null){
-                resultGroup.put(key,value);
-            }else {
-                resultGroup.put(key,((groupMap.get(key).size()-1)*exist+value)/(groupMap.get(key).size()));
-            }break;
-            case SUM:if (exist==null){
-                resultGroup.put(key,value);
-            }else {
-                resultGroup.put(key,exist+value);
-            }break;
-            case COUNT:if (exist==null){
-                resultGroup.put(key,1);
-            }else {
-                resultGroup.put(key,exist+1);
-            }break;
+            case COUNT: return state[1];
+            case AVG: return state[1] == 0 ? 0 : state[0] / state[1];
+            default: return state[0];
         }
-
     }
 
     /**
@@ -180,7 +117,7 @@ public class IntegerAggregator implements Aggregator {
         if (!grouping){
             List<Tuple> singleTup = new ArrayList<>();
             Tuple resultTup = new Tuple(td);
-            resultTup.setField(0, new IntField(singleResult));
+            resultTup.setField(0, new IntField(result(noGroup)));
             singleTup.add(resultTup);
             return new TupleIterator(td,singleTup);
         }
@@ -189,7 +126,7 @@ public class IntegerAggregator implements Aggregator {
                 Iterator<Field> keyIterator;
                 @Override
                 public void open() throws DbException, TransactionAbortedException {
-                    keyIterator = resultGroup.keySet().iterator();
+                    keyIterator = groups.keySet().iterator();
                 }
 
                 @Override
@@ -203,7 +140,7 @@ public class IntegerAggregator implements Aggregator {
                 public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
                     Tuple resultTup = new Tuple(td);
                     Field gbField = keyIterator.next();
-                    Integer aggregateVal = resultGroup.get(gbField);
+                    int aggregateVal = result(groups.get(gbField));
                     resultTup.setField(0,gbField);
                     resultTup.setField(1,new IntField(aggregateVal));
                     return resultTup;
@@ -1,6 +1,7 @@
 package simpledb.execution;
 
 import simpledb.storage.Field;
+import simpledb.storage.IntField;
 import simpledb.storage.Tuple;
 
 import java.io.Serializable;
@@ -106,6 +107,10 @@ public class Predicate implements Serializable {
      */
     public boolean filter(Tuple t) {
         // some code goes here
+        if (operand instanceof IntField) {
+            // read the value without creating a Field, e.g. from a TupleView
+            return IntField.compare(op, t.getInt(field), ((IntField) operand).getValue());
+        }
         return t.getField(field).compare(op, operand);
     }
 
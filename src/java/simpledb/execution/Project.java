@@ -5,6 +5,7 @@ import simpledb.common.Type;
 import simpledb.common.DbException;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleView;
 
 import java.util.*;
 
@@ -17,6 +18,9 @@ public class Project extends Operator {
     private OpIterator child;
     private final TupleDesc td;
     private final List<Integer> outFieldIds;
+    /** The child's last TupleView and a projection of it, reused while the child returns that view. */
+    private TupleView childView;
+    private TupleView projected;
 
     /**
      * Constructor accepts a child operator to read tuples to apply projection
@@ -65,7 +69,9 @@ public class Project extends Operator {
 
     /**
      * Operator.fetchNext implementation. Iterates over tuples from the child
-     * operator, projecting out the fields from the tuple
+     * operator, projecting out the fields from the tuple. A
+     * {@link TupleView} from the child is projected as a view that follows
+     * it, without copying its fields.
      *
      * @return The next tuple, or null if there are no more tuples
      */
@@ -73,6 +79,17 @@ public class Project extends Operator {
             TransactionAbortedException, DbException {
         if (!child.hasNext()) return null;
         Tuple t = child.next();
+        if (t instanceof TupleView) {
+            if (t != childView) {
+                int[] fields = new int[outFieldIds.size()];
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = outFieldIds.get(i);
+                }
+                childView = (TupleView) t;
+                projected = childView.project(td, fields);
+            }
+            return projected;
+        }
         Tuple newTuple = new Tuple(td);
         newTuple.setRecordId(t.getRecordId());
         for (int i = 0; i < td.numFields(); i++) {
@@ -75,7 +75,8 @@ public class Query implements Serializable {
 
     /**
      * Returns the next tuple, or throws NoSuchElementException if the iterator
-     * is closed.
+     * is closed. A {@link simpledb.storage.TupleView} from the plan is
+     * returned as a copy, so the caller may keep it.
      * 
      * @return The next tuple in the iterator
      * @throws DbException
@@ -90,7 +91,7 @@ public class Query implements Serializable {
         if (!started)
             throw new DbException("Database not started.");
 
-        return op.next();
+        return op.next().materialize();
     }
 
     /** Close the iterator */
@@ -9,6 +9,7 @@ import simpledb.common.DbException;
 import simpledb.storage.DbFileIterator;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleView;
 
 import java.util.*;
 
@@ -93,6 +94,24 @@ public class SeqScan implements OpIterator {
         this(tid, tableId, Database.getCatalog().getTableName(tableId));
     }
 
+    /**
+     * Return rows as a {@link TupleView} moved from row to row, so that a
+     * scan creates no Tuple or Field per row, instead of a new Tuple each.
+     * A row then only holds its values until the next call to next(); the
+     * operators above must not keep it past that without
+     * {@link Tuple#materialize}. Call before open().
+     * <p>
+     * Off by default, since whoever calls next() on a bare scan may keep the
+     * rows. {@link simpledb.optimizer.LogicalPlan#physicalPlan} turns it on
+     * for the scans of the plans it builds.
+     *
+     * @see DbFile#viewIterator
+     */
+    public void setTupleViews(boolean views) {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        dbFileIterator = views ? file.viewIterator(tid) : file.iterator(tid);
+    }
+
     @Override
     public void open() throws DbException, TransactionAbortedException {
         // some code goes here
@@ -21,11 +21,9 @@ public class StringAggregator implements Aggregator {
 
     private TupleDesc td;
 
-    private Map<Field,List<Tuple>> groupMap = new HashMap<>();
-    private List<Tuple> noGroupList = new ArrayList<>();
-
-    private Map<Field,Integer> resultGroup = new HashMap<>();
-    private Integer singleResult;
+    /** Number of rows of each group value. */
+    private Map<Field,int[]> groups = new HashMap<>();
+    private int noGroupCount;
 
     /**
      * Aggregate constructor
@@ -54,67 +52,26 @@ public class StringAggregator implements Aggregator {
     }
 
     /**
-     * Merge a new tuple into the aggregate, grouping as indicated in the constructor
+     * Merge a new tuple into the aggregate, grouping as indicated in the constructor.
+     * Only counts are kept, so tup may be a {@link TupleView} that moves on afterwards.
      * @param tup the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
         // some code goes here
+        // COUNT does not need the string itself
         if (grouping){
             Field gb = tup.getField(gbfield);
-            Tuple toMerge = new Tuple(td);
-            toMerge.setField(0, tup.getField(gbfield));
-            toMerge.setField(1, tup.getField(afield));
-
-            if (groupMap.containsKey(gb)){
-                groupMap.get(gb).add(toMerge);
-            }else {
-                ArrayList<Tuple> newList = new ArrayList<>();
-                newList.add(toMerge);
-                groupMap.put(gb,newList);
+            int[] count = groups.get(gb);
+            if (count == null){
+                count = new int[1];
+                groups.put(gb, count);
             }
-            groupHandler(toMerge);
+            count[0]++;
         }else {
-            Tuple toMerge = new Tuple(td);
-            toMerge.setField(0, tup.getField(afield));
-            noGroupList.add(toMerge);
-            noGroupHandler(toMerge);
-        }
-    }
-
-    private void noGroupHandler(Tuple tup){
-        String value = ((StringField)tup.getField(afield)).getValue();
-        switch (what){
-
-            case COUNT: if(singleResult==null){
-                singleResult = 1;
-            }else {
-                singleResult ++;
-            }
-        }
-    }
-
-    private void groupHandler(Tuple tuple){
-        Field key = tuple.getField(gbfield);
-        String value = ((StringField)tuple.getField(afield)).getValue();
-
-        if (!resultGroup.containsKey(key)){
-            resultGroup.put(key,null);
-
-        }
-
-        Integer exist = resultGroup.get(key);
-
-        switch (what){
-
-            case COUNT:if (exist==null){
-                resultGroup.put(key,1);
-            }else {
-                resultGroup.put(key,exist+1);
-            }break;
+            noGroupCount++;
         }
     }
 
-
     /**
      * Create a OpIterator over group aggregate results.
      *
@@ -130,7 +87,7 @@ public class StringAggregator implements Aggregator {
         if (!grouping){
             List<Tuple> singleTup = new ArrayList<>();
             Tuple resultTup = new Tuple(td);
-            resultTup.setField(0, new IntField(singleResult));
+            resultTup.setField(0, new IntField(noGroupCount));
             singleTup.add(resultTup);
             return new TupleIterator(td,singleTup);
         }
@@ -139,7 +96,7 @@ public class StringAggregator implements Aggregator {
             Iterator<Field> keyIterator;
             @Override
             public void open() throws DbException, TransactionAbortedException {
-                keyIterator = resultGroup.keySet().iterator();
+                keyIterator = groups.keySet().iterator();
             }
 
             @Override
@@ -152,7 +109,7 @@ public class StringAggregator implements Aggregator {
             public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
                 Tuple resultTup = new Tuple(td);
                 Field gbField = keyIterator.next();
-                Integer aggregateVal = resultGroup.get(gbField);
+                int aggregateVal = groups.get(gbField)[0];
                 resultTup.setField(0,gbField);
                 resultTup.setField(1,new IntField(aggregateVal));
                 return resultTup;
@@ -32,6 +32,8 @@ public class BTreeFile implements DbFile {
 	private final TupleDesc td;
 	private final int tableid ;
 	private final int keyField;
+	/** Kept open between page reads and writes. */
+	private final DbFileChannel channel;
 
 	/**
 	 * Constructs a B+ tree file backed by the specified file.
@@ -46,6 +48,7 @@ public class BTreeFile implements DbFile {
 		this.tableid = f.getAbsoluteFile().hashCode();
 		this.keyField = key;
 		this.td = td;
+		this.channel = new DbFileChannel(f);
 	}
 
 	/**
@@ -88,10 +91,10 @@ public class BTreeFile implements DbFile {
     public Page readPage(PageId pid) {
 		BTreePageId id = (BTreePageId) pid;
 
-        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(f))) {
+        try {
             if (id.pgcateg() == BTreePageId.ROOT_PTR) {
                 byte[] pageBuf = new byte[BTreeRootPtrPage.getPageSize()];
-                int retval = bis.read(pageBuf, 0, BTreeRootPtrPage.getPageSize());
+                int retval = channel.read(pageBuf, 0);
                 if (retval == -1) {
                     throw new IllegalArgumentException("Read past end of table");
                 }
@@ -103,12 +106,7 @@ public class BTreeFile implements DbFile {
                 return new BTreeRootPtrPage(id, pageBuf);
             } else {
                 byte[] pageBuf = new byte[BufferPool.getPageSize()];
-                if (bis.skip(BTreeRootPtrPage.getPageSize() + (long) (id.getPageNumber() - 1) * BufferPool.getPageSize()) !=
-                        BTreeRootPtrPage.getPageSize() + (long) (id.getPageNumber() - 1) * BufferPool.getPageSize()) {
-                    throw new IllegalArgumentException(
-                            "Unable to seek to correct place in BTreeFile");
-                }
-                int retval = bis.read(pageBuf, 0, BufferPool.getPageSize());
+                int retval = channel.read(pageBuf, pageOffset(id.getPageNumber()));
                 if (retval == -1) {
                     throw new IllegalArgumentException("Read past end of table");
                 }
@@ -128,10 +126,16 @@ public class BTreeFile implements DbFile {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        // Close the file on success or error
-        // Ignore failures closing the file
     }
 
+	/**
+	 * Returns the offset in the file of page pgNo; the root pointer page
+	 * comes first and is smaller than the other pages.
+	 */
+	private static long pageOffset(int pgNo) {
+		return BTreeRootPtrPage.getPageSize() + (long) (pgNo - 1) * BufferPool.getPageSize();
+	}
+
 	/**
 	 * Write a page to disk.  This should not be called directly but should 
 	 * be called from the BufferPool when pages are flushed to disk
@@ -143,17 +147,18 @@ public class BTreeFile implements DbFile {
 		BTreePageId id = (BTreePageId) page.getId();
 		
 		byte[] data = page.getPageData();
-		RandomAccessFile rf = new RandomAccessFile(f, "rw");
 		if(id.pgcateg() == BTreePageId.ROOT_PTR) {
-			rf.write(data);
-			rf.close();
+			channel.write(data, 0);
 		}
 		else {
-			rf.seek(BTreeRootPtrPage.getPageSize() + (long) (page.getId().getPageNumber() - 1) * BufferPool.getPageSize());
-			rf.write(data);
-			rf.close();
+			channel.write(data, pageOffset(page.getId().getPageNumber()));
 		}
 	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
 	
 	/**
 	 * Returns the number of pages in this BTreeFile.
@@ -931,10 +936,7 @@ public class BTreeFile implements DbFile {
 		BTreePageId newPageId = new BTreePageId(tableid, emptyPageNo, pgcateg);
 		
 		// write empty page to disk
-		RandomAccessFile rf = new RandomAccessFile(f, "rw");
-		rf.seek(BTreeRootPtrPage.getPageSize() + (long) (emptyPageNo - 1) * BufferPool.getPageSize());
-		rf.write(BTreePage.createEmptyPageData());
-		rf.close();
+		channel.write(BTreePage.createEmptyPageData(), pageOffset(emptyPageNo));
 		
 		// make sure the page is not in the buffer pool	or in the local cache		
 		Database.getBufferPool().discardPage(newPageId);
@@ -1064,6 +1066,8 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 
 	Iterator<Tuple> it = null;
 	BTreeLeafPage curp = null;
+	/** leaves visited since the last read-ahead was issued */
+	int leavesSinceReadAhead = 0;
 
 	final TransactionId tid;
 	final BTreeFile f;
@@ -1086,7 +1090,29 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 				tid, BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
 		BTreePageId root = rootPtr.getRootId();
 		curp = f.findLeafPage(tid, root, null);
+		// pinned, as readNext and close unpin it
+		curp = (BTreeLeafPage) Database.getBufferPool().getPinnedPage(tid,
+				curp.getId(), Permissions.READ_ONLY);
 		it = curp.iterator();
+		readAhead();
+	}
+
+	/**
+	 * Ask the buffer pool to read the leaves to the right of curp in the
+	 * background, following the right sibling pointers. The read-ahead is
+	 * issued again once the scan has used up half of the window.
+	 */
+	private void readAhead() {
+		int window = Database.getBufferPool().getPrefetchPages();
+		BTreePageId next = curp.getRightSiblingId();
+		if (window == 0 || next == null)
+			return;
+		if (leavesSinceReadAhead == 0 || leavesSinceReadAhead >= (window + 1) / 2) {
+			leavesSinceReadAhead = 0;
+			Database.getBufferPool().prefetchChain(next, window,
+					p -> ((BTreeLeafPage) p).getRightSiblingId());
+		}
+		leavesSinceReadAhead++;
 	}
 
 	/**
@@ -1103,11 +1129,14 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 		while (it == null && curp != null) {
 			BTreePageId nextp = curp.getRightSiblingId();
 			if(nextp == null) {
+				Database.getBufferPool().unpinPage(tid, curp.getId());
 				curp = null;
 			}
 			else {
-				curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
+				Database.getBufferPool().unpinPage(tid, curp.getId());
+				curp = (BTreeLeafPage) Database.getBufferPool().getPinnedPage(tid,
 						nextp, Permissions.READ_ONLY);
+				readAhead();
 				it = curp.iterator();
 				if (!it.hasNext())
 					it = null;
@@ -1132,8 +1161,11 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 	 */
 	public void close() {
 		super.close();
+		if (curp != null)
+			Database.getBufferPool().unpinPage(tid, curp.getId());
 		it = null;
 		curp = null;
+		leavesSinceReadAhead = 0;
 	}
 }
 
@@ -1177,6 +1209,9 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 		else {
 			curp = f.findLeafPage(tid, root, null);
 		}
+		// pinned, as readNext and close unpin it
+		curp = (BTreeLeafPage) Database.getBufferPool().getPinnedPage(tid,
+				curp.getId(), Permissions.READ_ONLY);
 		it = curp.iterator();
 	}
 
@@ -1215,7 +1250,8 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 				return null;
 			}
 			else {
-				curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
+				Database.getBufferPool().unpinPage(tid, curp.getId());
+				curp = (BTreeLeafPage) Database.getBufferPool().getPinnedPage(tid,
 						nextp, Permissions.READ_ONLY);
 				it = curp.iterator();
 			}
@@ -1237,6 +1273,9 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 	 */
 	public void close() {
 		super.close();
+		if (curp != null)
+			Database.getBufferPool().unpinPage(tid, curp.getId());
 		it = null;
+		curp = null;
 	}
 }
@@ -268,7 +268,8 @@ public class JoinOptimizer {
         //Replace the following
         int j = joins.size();
         PlanCache bestPlan = new PlanCache();
-        List<LogicalJoinNode> optJoins = null;
+        // with no joins, the order is the empty list
+        List<LogicalJoinNode> optJoins = joins;
         for (int i=1; i<=j; i++){
             Set<Set<LogicalJoinNode>> subsets = enumerateSubsets(joins,i);
             for (Set<LogicalJoinNode> subset : subsets){
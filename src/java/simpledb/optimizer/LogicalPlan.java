@@ -301,6 +301,10 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown table " + table.t);
             }
+            // every operator of a plan is done with a row before it asks for
+            // the next one or keeps a copy, and Query returns copies, so the
+            // scan can move one view from row to row
+            ss.setTupleViews(true);
             
             subplanMap.put(table.alias,ss);
             String baseTableName = Database.getCatalog().getTableName(table.t);
@@ -97,7 +97,9 @@ public class TableStats {
         this.tableid = tableid;
         this.ioCostPerPage = ioCostPerPage;
         this.tupleDesc = Database.getCatalog().getTupleDesc(tableid);
-        DbFileIterator tpIterator = Database.getCatalog().getDatabaseFile(tableid).iterator(new TransactionId());
+        // through views, so the pages stay unparsed in the pool and later
+        // scans of a PAX table read only the columns they use
+        DbFileIterator tpIterator = Database.getCatalog().getDatabaseFile(tableid).viewIterator(new TransactionId());
 
         int[] min = new int[tupleDesc.numFields()];
         int[] max = new int[tupleDesc.numFields()];
@@ -114,8 +116,8 @@ public class TableStats {
                 Tuple tp = tpIterator.next();
                 for (int i=0;i<tupleDesc.numFields();i++){
                     if (tupleDesc.getFieldType(i) == Type.INT_TYPE){
-                        min[i] = Math.min(min[i], ((IntField)tp.getField(i)).getValue());
-                        max[i] = Math.max(max[i], ((IntField)tp.getField(i)).getValue());
+                        min[i] = Math.min(min[i], tp.getInt(i));
+                        max[i] = Math.max(max[i], tp.getInt(i));
                     }
                 }
             }
@@ -133,7 +135,7 @@ public class TableStats {
                 Tuple tp = tpIterator.next();
                 for (int i=0;i<tupleDesc.numFields();i++){
                     if (tupleDesc.getFieldType(i) == Type.INT_TYPE){
-                        ((IntHistogram)histogramList.get(i)).addValue(((IntField)tp.getField(i)).getValue());
+                        ((IntHistogram)histogramList.get(i)).addValue(tp.getInt(i));
                     }else {
                         ((StringHistogram)histogramList.get(i)).addValue(((StringField)tp.getField(i)).getValue());
                     }
@@ -7,10 +7,26 @@ import simpledb.transaction.TransactionId;
 import java.io.*;
 
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -33,10 +49,550 @@ public class BufferPool {
     other classes. BufferPool should use the numPages argument to the
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
+    /** Default number of partitions; a single partition behaves like one global pool. */
+    public static final int DEFAULT_PARTITIONS = 1;
+    /** Default number of pages read ahead of a sequential scan. */
+    public static final int DEFAULT_PREFETCH_PAGES = 8;
+    /** Default time resize waits for dirty or pinned pages to be released when shrinking. */
+    public static final long DEFAULT_RESIZE_TIMEOUT_MILLIS = 5000;
+    private static final long RESIZE_RETRY_MILLIS = 10;
     LockManager lockManager = new LockManager();
-    Page[] pool;
-    boolean[] clock;
-    int numPages;
+    /** Number of frames; changed only by resize. */
+    volatile int numPages;
+    /** Frames split by PageId hash; each partition has its own latch and replacement policy. */
+    Partition[] partitions;
+    /** Builds the replacement policy of a partition from its number of frames. */
+    final IntFunction<ReplacementPolicy> policyFactory;
+    /** Number of pages read ahead of a sequential scan; 0 turns read-ahead off. */
+    volatile int prefetchPages = DEFAULT_PREFETCH_PAGES;
+    /** Bumped whenever a page is written back; lets a ring tell if a read-ahead page may be stale. */
+    final AtomicLong writeEpoch = new AtomicLong();
+    /** FORCE: commit writes the transaction's pages; otherwise they are logged and written back later. */
+    volatile boolean forceOnCommit = true;
+    /** Committed pages waiting to be written back, over all partitions; wakes the cleaner. */
+    final AtomicInteger numCommittedDirty = new AtomicInteger();
+    /** Background writer, if started; guarded by this. */
+    private volatile PageCleaner cleaner;
+    /** Committed page versions kept for snapshot transactions; its monitor orders commits. */
+    final VersionStore versions = new VersionStore();
+    /**
+     * Pages each live transaction may have dirtied: those it locked for
+     * writing and those insertTuple and deleteTuple handed back, so that
+     * commit and abort visit only these.
+     */
+    final ConcurrentHashMap<TransactionId, Set<PageId>> touched = new ConcurrentHashMap<>();
+    /** Running optimistic transactions. */
+    final ConcurrentHashMap<TransactionId, Optimistic> optimistic = new ConcurrentHashMap<>();
+    /** Pins each live transaction holds, per page; dropped when it completes. */
+    final ConcurrentHashMap<TransactionId, ConcurrentHashMap<PageId, AtomicInteger>> pinned = new ConcurrentHashMap<>();
+
+    /**
+     * An optimistic transaction's state. It reads the snapshot taken when it
+     * began and writes private copies of pages, which only validation at
+     * commit installs in the pool. Used by the transaction's own thread.
+     */
+    static class Optimistic {
+        final long snapshot;
+        /** Every page read or written, in first-access order. */
+        final Set<PageId> accessed = new LinkedHashSet<>();
+        /** Private copies of the pages being written. */
+        final Map<PageId, Page> writes = new HashMap<>();
+        /** Set once validation starts locking the pages written. */
+        boolean validating = false;
+
+        Optimistic(long snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+
+    /** Background I/O threads shared by all pools; created on first read-ahead. */
+    static class IoExecutor {
+        static final int IO_THREADS = 2;
+        static final ExecutorService INSTANCE = Executors.newFixedThreadPool(IO_THREADS, r -> {
+            Thread t = new Thread(r, "simpledb-io");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Writes committed dirty pages back every intervalMillis, or sooner when
+     * woken, so that eviction finds clean victims.
+     */
+    class PageCleaner extends Thread {
+        final long intervalMillis;
+        volatile boolean running = true;
+
+        PageCleaner(long intervalMillis) {
+            super("simpledb-cleaner");
+            setDaemon(true);
+            this.intervalMillis = intervalMillis;
+        }
+
+        @Override
+        public void run() {
+            while (running){
+                synchronized (this){
+                    try {
+                        wait(intervalMillis);
+                    }catch (InterruptedException e){
+                        return;
+                    }
+                }
+                if (running){
+                    cleanPages();
+                }
+            }
+        }
+
+        synchronized void wake() {
+            notifyAll();
+        }
+    }
+
+    /**
+     * One slice of the buffer pool. All fields are guarded by the partition's
+     * monitor, so threads faulting in pages that hash to different partitions
+     * never contend with each other.
+     */
+    class Partition {
+        Page[] pool;
+        /**
+         * Page table: maps a cached PageId to the index of its frame in pool.
+         * Updated under the latch; read without it to unpin.
+         */
+        final Map<PageId, Integer> pageTable;
+        /** Indexes of frames in pool that hold no page. */
+        final Deque<Integer> freeFrames;
+        ReplacementPolicy policy;
+        /**
+         * Pin count of each frame; a pinned frame is never chosen for
+         * eviction nor moved by a resize, so unpin needs no latch.
+         */
+        volatile AtomicInteger[] pins;
+        /** Read-aheads in progress, completed once the page is in the pool (or dropped). */
+        final Map<PageId, CompletableFuture<Page>> reading = new HashMap<>();
+        /**
+         * Dirty pages whose updates are committed and logged but not yet
+         * written back (NO FORCE), with the transaction that committed them.
+         */
+        final Map<PageId, TransactionId> committed = new HashMap<>();
+        long hits = 0;
+        long misses = 0;
+
+        Partition(int frames) {
+            pool = new Page[frames];
+            policy = policyFactory.apply(frames);
+            pageTable = new ConcurrentHashMap<>(frames * 2);
+            pins = new AtomicInteger[frames];
+            for (int i = 0; i < frames; i++){
+                pins[i] = new AtomicInteger();
+            }
+            freeFrames = new ArrayDeque<>(frames);
+            for (int i = 0; i < frames; i++){
+                freeFrames.add(i);
+            }
+        }
+
+        /**
+         * Return the cached page for pid, reading it from disk (and evicting
+         * another page of this partition if needed) when it is not cached. If
+         * the page is being read ahead, wait for that read instead. With pin,
+         * the page's frame is pinned before the latch is let go.
+         */
+        Page fetch(PageId pid, boolean pin) throws DbException {
+            CompletableFuture<Page> pending;
+            synchronized (this){
+                Page cached = lookup(pid);
+                if (cached != null){
+                    return pin ? pin(pid, cached) : cached;
+                }
+                pending = reading.get(pid);
+                if (pending == null){
+                    Page loaded = load(pid);
+                    return pin ? pin(pid, loaded) : loaded;
+                }
+            }
+            pending.join();
+            synchronized (this){
+                Integer frame = pageTable.get(pid);
+                Page page;
+                if (frame != null){
+                    policy.touch(frame);
+                    page = pool[frame];
+                }else {
+                    page = load(pid);
+                }
+                return pin ? pin(pid, page) : page;
+            }
+        }
+
+        /** Pin the frame holding page, the cached page for pid (if not null), and return page. */
+        private Page pin(PageId pid, Page page) {
+            if (page != null){
+                pins[pageTable.get(pid)].incrementAndGet();
+            }
+            return page;
+        }
+
+        /** Drop one pin from pid's frame, if pid is cached and pinned. */
+        void unpin(PageId pid) {
+            Integer frame = pageTable.get(pid);
+            if (frame != null){
+                pins[frame].getAndUpdate(c -> c > 0 ? c - 1 : 0);
+            }
+        }
+
+        int pinCount(PageId pid) {
+            Integer frame = pageTable.get(pid);
+            return frame == null ? 0 : pins[frame].get();
+        }
+
+        int numPinned() {
+            int n = 0;
+            for (AtomicInteger pin : pins){
+                if (pin.get() > 0){
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        /**
+         * Read pid into a free frame, evicting another page of this partition
+         * if needed. The page must not be cached.
+         */
+        synchronized Page load(PageId pid) throws DbException {
+            if (freeFrames.isEmpty()){
+                evict();
+            }
+            Integer frame = freeFrames.poll();
+            if (frame == null){
+                return null;
+            }
+            pool[frame] = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+            pageTable.put(pid, frame);
+            policy.admit(frame, pid);
+            return pool[frame];
+        }
+
+        /**
+         * Read-ahead: return pid's page, reading it into the pool if it is not
+         * cached, without counting a hit or a miss. The disk read happens
+         * outside the latch so it does not hold up requests for cached pages;
+         * the page is dropped if some page was written back meanwhile (it may
+         * be stale) or if no clean frame can be freed for it. Returns null if
+         * the page was not cached and could not be added.
+         */
+        Page prefetch(PageId pid) {
+            long epoch;
+            CompletableFuture<Page> done = new CompletableFuture<>();
+            synchronized (this){
+                Integer frame = pageTable.get(pid);
+                if (frame != null){
+                    return pool[frame];
+                }
+                if (reading.containsKey(pid)){
+                    return null;
+                }
+                reading.put(pid, done);
+                epoch = writeEpoch.get();
+            }
+            Page added = null;
+            try {
+                Page page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+                synchronized (this){
+                    if (page != null && epoch == writeEpoch.get()){
+                        added = add(pid, page);
+                    }
+                }
+            }finally {
+                synchronized (this){
+                    reading.remove(pid);
+                }
+                done.complete(added);
+            }
+            return added;
+        }
+
+        /** Put a prefetched page in a free frame, if a clean frame can be freed for it. */
+        private synchronized Page add(PageId pid, Page page) {
+            Integer frame = pageTable.get(pid);
+            if (frame != null){
+                return pool[frame];
+            }
+            try {
+                if (freeFrames.isEmpty()){
+                    evict();
+                }
+            }catch (DbException e){
+                return null;
+            }
+            frame = freeFrames.poll();
+            pool[frame] = page;
+            pageTable.put(pid, frame);
+            policy.admit(frame, pid);
+            return page;
+        }
+
+        /**
+         * Return the cached page for pid, or null if it is not cached. Counts
+         * a hit or a miss.
+         */
+        synchronized Page lookup(PageId pid) {
+            Integer frame = pageTable.get(pid);
+            if (frame == null){
+                misses++;
+                return null;
+            }
+            hits++;
+            policy.touch(frame);
+            return pool[frame];
+        }
+
+        /** Like lookup, but pins the page's frame if it is cached. */
+        synchronized Page lookupPinned(PageId pid) {
+            return pin(pid, lookup(pid));
+        }
+
+        synchronized void discard(PageId pid) {
+            Integer frame = pageTable.remove(pid);
+            uncommit(pid);
+            if (frame != null){
+                pool[frame] = null;
+                pins[frame].set(0);
+                policy.remove(frame);
+                freeFrames.add(frame);
+            }
+        }
+
+        synchronized void flush(PageId pid) throws IOException {
+            Integer frame = pageTable.get(pid);
+            if (frame == null){
+                return;
+            }
+            Page toFlush = pool[frame];
+            uncommit(pid);
+            writeEpoch.incrementAndGet();
+            Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(toFlush);
+            toFlush.markDirty(false, null);
+        }
+
+        synchronized void flushAll() throws IOException {
+            for (Page p : pool){
+                if (p!=null&&p.isDirty()!=null){
+                    writeEpoch.incrementAndGet();
+                    Database.getCatalog().getDatabaseFile(p.getId().getTableId()).writePage(p);
+                    p.markDirty(false, null);
+                }
+            }
+            numCommittedDirty.addAndGet(-committed.size());
+            committed.clear();
+        }
+
+        /** Return the cached page for pid, or null, without counting a hit or a miss. */
+        synchronized Page peek(PageId pid) {
+            Integer frame = pageTable.get(pid);
+            return frame == null ? null : pool[frame];
+        }
+
+        /**
+         * Cache page, replacing the cached version of its PageId if any (a
+         * DbFile may hand back pages it built itself), evicting another page
+         * of this partition if needed.
+         */
+        synchronized void install(Page page) throws DbException {
+            PageId pid = page.getId();
+            Integer frame = pageTable.get(pid);
+            if (frame == null){
+                if (freeFrames.isEmpty()){
+                    evict();
+                }
+                frame = freeFrames.poll();
+                pageTable.put(pid, frame);
+                policy.admit(frame, pid);
+            }
+            pool[frame] = page;
+        }
+
+        /** Mark page clean once it has been written back by its committing transaction. */
+        synchronized void written(Page page) {
+            uncommit(page.getId());
+            page.markDirty(false, null);
+        }
+
+        /** Record that pid's updates by tid are committed and logged, so it may be written back. */
+        synchronized void markCommitted(PageId pid, TransactionId tid) {
+            if (pageTable.containsKey(pid) && committed.put(pid, tid) == null){
+                numCommittedDirty.incrementAndGet();
+            }
+        }
+
+        /** Forget that pid waits to be written back, if it did. */
+        private void uncommit(PageId pid) {
+            if (committed.remove(pid) != null){
+                numCommittedDirty.decrementAndGet();
+            }
+        }
+
+        /** Write back every committed page that can be written now; return how many were. */
+        synchronized int clean() throws IOException {
+            int cleaned = 0;
+            Iterator<Map.Entry<PageId, TransactionId>> it = committed.entrySet().iterator();
+            while (it.hasNext()){
+                Map.Entry<PageId, TransactionId> e = it.next();
+                if (writeBack(pool[pageTable.get(e.getKey())], e.getValue())){
+                    it.remove();
+                    numCommittedDirty.decrementAndGet();
+                    cleaned++;
+                }
+            }
+            return cleaned;
+        }
+
+        /**
+         * Write page back if its dirty bytes are all committer's (NO STEAL:
+         * not if a live transaction dirtied it again) and no transaction holds
+         * an exclusive lock on it, which could be changing it under us. The
+         * caller removes the page from committed.
+         */
+        private boolean writeBack(Page page, TransactionId committer) throws IOException {
+            PageId pid = page.getId();
+            LockManager.TableKey table = new LockManager.TableKey(pid.getTableId());
+            // its own id, so a write-back in another partition cannot release these locks
+            TransactionId cleanerTid = new TransactionId();
+            if (!committer.equals(page.isDirty())||!lockManager.tryAcquireLock(cleanerTid, table, LockManager.LockType.ISLock)){
+                return false;
+            }
+            try {
+                if (!lockManager.tryAcquireLock(cleanerTid, pid, LockManager.LockType.SLock)){
+                    return false;
+                }
+                writeEpoch.incrementAndGet();
+                Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+                page.markDirty(false, null);
+            }finally {
+                lockManager.releaseTransaction(cleanerTid);
+            }
+            return true;
+        }
+
+        /**
+         * Abort: if tid dirtied pid, put back its last committed version, the
+         * before image, which commit keeps current. No disk read is needed,
+         * and a committed version not yet written back (NO FORCE) stays
+         * dirty for the cleaner. Returns the restored page, or null.
+         */
+        synchronized Page restore(PageId pid, TransactionId tid) {
+            Integer frame = pageTable.get(pid);
+            if (frame == null || !tid.equals(pool[frame].isDirty())){
+                return null;
+            }
+            // same PageId, same frame: the page table stays valid
+            Page restored = pool[frame].getBeforeImage();
+            TransactionId committer = committed.get(pid);
+            if (committer != null){
+                restored.markDirty(true, committer);
+            }
+            pool[frame] = restored;
+            return restored;
+        }
+
+        /**
+         * Evict the frame chosen by the replacement policy. Pinned pages and
+         * pages dirtied by live transactions are never evicted (NO STEAL);
+         * committed pages not yet written back are, after writing them, when
+         * no clean page is left.
+         */
+        synchronized void evict() throws DbException {
+            int victim = policy.victim(f -> pool[f]!=null&&pins[f].get()==0&&pool[f].isDirty()==null);
+            if (victim == -1 && !committed.isEmpty()){
+                victim = policy.victim(f -> pool[f]!=null&&pins[f].get()==0&&pool[f].isDirty()!=null
+                        &&pool[f].isDirty().equals(committed.get(pool[f].getId())));
+                try {
+                    if (victim != -1 && !writeBack(pool[victim], committed.get(pool[victim].getId()))){
+                        victim = -1;
+                    }
+                }catch (IOException e){
+                    throw new DbException("could not write back page: " + e.getMessage());
+                }
+            }
+            if (victim == -1){
+                throw new DbException("Full of dirty or pinned pages");
+            }
+            discard(pool[victim].getId());
+        }
+
+        /**
+         * Change the number of frames to frames. Growing always succeeds.
+         * Shrinking first evicts pages, as a fetch would, until the rest fit,
+         * then moves the pages in frames past the new end into free frames.
+         * It gives up, changing nothing, if pinned pages sit past the new end
+         * or too many pages are dirty or pinned to be evicted. The policy is
+         * rebuilt for the new frame count, so it forgets the pages' history.
+         *
+         * @return true if the partition now has frames frames
+         */
+        synchronized boolean resize(int frames) {
+            int old = pool.length;
+            if (frames < old){
+                for (int f = frames; f < old; f++){
+                    if (pool[f] != null && pins[f].get() > 0){
+                        return false;
+                    }
+                }
+                try {
+                    while (pageTable.size() > frames){
+                        evict();
+                    }
+                }catch (DbException e){
+                    return false;
+                }
+                freeFrames.removeIf(f -> f >= frames);
+                for (int f = frames; f < old; f++){
+                    if (pool[f] != null){
+                        int to = freeFrames.poll();
+                        pool[to] = pool[f];
+                        pool[f] = null;
+                        pageTable.put(pool[to].getId(), to);
+                    }
+                }
+            }
+            pool = Arrays.copyOf(pool, frames);
+            AtomicInteger[] resized = Arrays.copyOf(pins, frames);
+            for (int f = old; f < frames; f++){
+                resized[f] = new AtomicInteger();
+                freeFrames.add(f);
+            }
+            pins = resized;
+            policy = policyFactory.apply(frames);
+            for (int f = 0; f < frames; f++){
+                if (pool[f] != null){
+                    policy.admit(f, pool[f].getId());
+                }
+            }
+            return true;
+        }
+
+        synchronized int capacity() {
+            return pool.length;
+        }
+
+        synchronized int numDirty() {
+            int n = 0;
+            for (Page p : pool){
+                if (p!=null&&p.isDirty()!=null){
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        synchronized int size() {
+            return pageTable.size();
+        }
+    }
+
     /**
      * Creates a BufferPool that caches up to numPages pages.
      *
@@ -44,11 +600,235 @@ public class BufferPool {
      */
     public BufferPool(int numPages) {
         // some code goes here
-        pool = new Page[numPages];
-        clock = new boolean[numPages];
+        this(numPages, DEFAULT_PARTITIONS);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, split into
+     * numPartitions independently latched partitions by PageId hash.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param numPartitions number of partitions; clamped to [1, numPages].
+     */
+    public BufferPool(int numPages, int numPartitions) {
+        this(numPages, numPartitions, ClockPolicy::new);
+    }
+
+    /**
+     * Creates a partitioned BufferPool whose partitions each evict with the
+     * policy built by policyFactory, e.g. {@code LruKPolicy::new}.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param numPartitions number of partitions; clamped to [1, numPages].
+     * @param policyFactory builds a policy for a partition of the given number of frames.
+     */
+    public BufferPool(int numPages, int numPartitions, IntFunction<ReplacementPolicy> policyFactory) {
         this.numPages = numPages;
+        this.policyFactory = policyFactory;
+        numPartitions = Math.max(1, Math.min(numPartitions, numPages));
+        partitions = new Partition[numPartitions];
+        for (int i = 0; i < numPartitions; i++){
+            partitions[i] = new Partition(share(numPages, numPartitions, i));
+        }
     }
-    
+
+    /** Return the number of frames partition i of numPartitions gets out of numPages. */
+    private static int share(int numPages, int numPartitions, int i) {
+        // spread the remainder over the first partitions
+        return numPages/numPartitions + (i < numPages%numPartitions ? 1 : 0);
+    }
+
+    /**
+     * Change the number of frames of this pool to numPages while
+     * transactions keep running, waiting up to
+     * {@link #DEFAULT_RESIZE_TIMEOUT_MILLIS} for pages to drain when
+     * shrinking.
+     *
+     * @see #resize(int, long)
+     */
+    public void resize(int numPages) throws DbException {
+        resize(numPages, DEFAULT_RESIZE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Change the number of frames of this pool to numPages while
+     * transactions keep running. The partitions keep their number and are
+     * resized one at a time, each under its own latch. Growing takes effect
+     * at once. Shrinking evicts clean pages (and writes back committed ones)
+     * until the rest fit; pages dirtied by live transactions or pinned are
+     * never evicted, so if too many of them are left the partition is tried
+     * again as those transactions finish, for up to timeoutMillis.
+     *
+     * @throws DbException if numPages is smaller than the number of
+     *     partitions, or the pool could not shrink in time; the partitions
+     *     resized before that keep their new size, as {@link #getNumPages}
+     *     reports.
+     */
+    public synchronized void resize(int numPages, long timeoutMillis) throws DbException {
+        if (numPages < partitions.length){
+            throw new DbException("a pool of " + partitions.length + " partitions needs at least as many pages");
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        try {
+            for (int i = 0; i < partitions.length; i++){
+                while (!partitions[i].resize(share(numPages, partitions.length, i))){
+                    if (System.currentTimeMillis() >= deadline){
+                        throw new DbException("could not shrink the buffer pool to " + numPages
+                                + " pages: too many pages dirty or pinned");
+                    }
+                    Thread.sleep(RESIZE_RETRY_MILLIS);
+                }
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new DbException("interrupted while resizing the buffer pool");
+        }finally {
+            int n = 0;
+            for (Partition part : partitions){
+                n += part.capacity();
+            }
+            this.numPages = n;
+        }
+    }
+
+    Partition partitionFor(PageId pid) {
+        int h = pid.hashCode();
+        h ^= (h >>> 16);
+        return partitions[(h & 0x7fffffff) % partitions.length];
+    }
+
+    /** Return the number of partitions this pool is split into. */
+    public int getNumPartitions() {
+        return partitions.length;
+    }
+
+    /** Return the number of getPage requests answered from the pool. */
+    public long getHitCount() {
+        long n = 0;
+        for (Partition part : partitions){
+            synchronized (part){
+                n += part.hits;
+            }
+        }
+        return n;
+    }
+
+    /** Return the number of getPage requests that had to read the page from disk. */
+    public long getMissCount() {
+        long n = 0;
+        for (Partition part : partitions){
+            synchronized (part){
+                n += part.misses;
+            }
+        }
+        return n;
+    }
+
+    /** Reset the hit and miss counters. */
+    public void resetStats() {
+        for (Partition part : partitions){
+            synchronized (part){
+                part.hits = 0;
+                part.misses = 0;
+            }
+        }
+    }
+
+    /** Return the number of pages currently cached. */
+    public int getNumCachedPages() {
+        int n = 0;
+        for (Partition part : partitions){
+            n += part.size();
+        }
+        return n;
+    }
+
+    /** Return the number of cached pages that are dirty, committed or not. */
+    public int getNumDirtyPages() {
+        int n = 0;
+        for (Partition part : partitions){
+            n += part.numDirty();
+        }
+        return n;
+    }
+
+    /**
+     * Return the number of committed pages waiting to be written back (NO
+     * FORCE). Kept as a count, so reading it does not visit the frames.
+     */
+    public int getNumCommittedDirtyPages() {
+        return numCommittedDirty.get();
+    }
+
+    /** Return the number of old page versions kept for snapshot transactions. */
+    public int getNumPageVersions() {
+        return versions.size();
+    }
+
+    /** Return true if commit writes the transaction's pages to disk (FORCE). */
+    public boolean isForceOnCommit() {
+        return forceOnCommit;
+    }
+
+    /**
+     * Choose between FORCE (the default) and NO FORCE at commit. With NO
+     * FORCE a committing transaction appends an update record with the
+     * before and after image of each page it dirtied to the log and forces
+     * the log, but leaves the pages dirty in the pool; they are written back
+     * by the page cleaner, by eviction or by flushAllPages. Until then the
+     * log is the only durable copy of those updates; {@link LogFile#recover}
+     * installs them after a crash and undoes those whose commit record did
+     * not reach the log. The commit record is written by transactionComplete
+     * itself, before the transaction's locks are released. Choose the mode
+     * before transactions run.
+     */
+    public void setForceOnCommit(boolean forceOnCommit) {
+        this.forceOnCommit = forceOnCommit;
+    }
+
+    /**
+     * Start a background thread that writes committed dirty pages back every
+     * intervalMillis (and when many have piled up), replacing one already
+     * running. Only NO FORCE commits leave such pages behind, and pages
+     * dirtied by live transactions are never written (NO STEAL).
+     */
+    public synchronized void startPageCleaner(long intervalMillis) {
+        stopPageCleaner();
+        cleaner = new PageCleaner(intervalMillis);
+        cleaner.start();
+    }
+
+    /** Stop the page cleaner, if running, and wait for it to finish. */
+    public synchronized void stopPageCleaner() {
+        if (cleaner == null){
+            return;
+        }
+        cleaner.running = false;
+        cleaner.wake();
+        try {
+            cleaner.join();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        cleaner = null;
+    }
+
+    /**
+     * Write back the committed dirty pages that can be written now, as one
+     * pass of the page cleaner does, and return how many were written.
+     */
+    public int cleanPages() {
+        int cleaned = 0;
+        try {
+            for (Partition part : partitions){
+                cleaned += part.clean();
+            }
+        }catch (IOException e){
+            e.printStackTrace();
+        }
+        return cleaned;
+    }
+
     public static int getPageSize() {
       return pageSize;
     }
@@ -81,39 +861,382 @@ public class BufferPool {
     public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
         // some code goes here
-        LockManager.LockType type;
-        if (perm == Permissions.READ_ONLY){
-            type = LockManager.LockType.SLock;
-        }else {
-            type = LockManager.LockType.XLock;
+        return getPage(tid, pid, perm, null, false);
+    }
+
+    /**
+     * Like {@link #getPage(TransactionId, PageId, Permissions)}, but also pins
+     * the page's frame so that it is not evicted while the caller uses the
+     * page; each call must be matched by {@link #unpinPage} unless the pin
+     * may last until tid completes. Pages read by snapshot transactions are
+     * private copies and are not pinned.
+     */
+    public Page getPinnedPage(TransactionId tid, PageId pid, Permissions perm)
+        throws TransactionAbortedException, DbException {
+        return getPage(tid, pid, perm, null, true);
+    }
+
+    /**
+     * Pinning version of {@link #getPage(TransactionId, PageId, Permissions, BufferRing)}.
+     * Only a page returned from the pool is pinned; ring pages are the
+     * scan's own.
+     */
+    public Page getPinnedPage(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+        throws TransactionAbortedException, DbException {
+        return getPage(tid, pid, perm, ring, true);
+    }
+
+    private Page getPage(TransactionId tid, PageId pid, Permissions perm, BufferRing ring, boolean pin)
+        throws TransactionAbortedException, DbException {
+        Optimistic occ = optimistic.get(tid);
+        if (occ != null){
+            return getOptimisticPage(occ, pid, perm, ring);
         }
-        lockManager.acquireLock(tid, pid, type);
-        for (int i=0;i<pool.length;i++){
-            if (pool[i]!=null&&pool[i].getId().equals(pid)){
-                clock[i] = true;
-                return pool[i];
+        Long snapshot = versions.snapshotOf(tid);
+        if (snapshot != null){
+            return getSnapshotPage(pid, snapshot, perm, ring);
+        }
+        lockPage(tid, pid, perm);
+        Partition part = partitionFor(pid);
+        Page page;
+        if (ring != null && perm == Permissions.READ_ONLY){
+            page = pin ? part.lookupPinned(pid) : part.lookup(pid);
+            if (page == null){
+                return readIntoRing(pid, ring);
+            }
+        }else {
+            page = part.fetch(pid, pin);
+            if (page == null){
+                // Page not found. release the lock
+                lockManager.releaseLock(tid, pid);
+                return null;
             }
         }
+        if (pin){
+            recordPin(tid, pid);
+        }
+        return page;
+    }
+
+    private void recordPin(TransactionId tid, PageId pid) {
+        pinned.computeIfAbsent(tid, t -> new ConcurrentHashMap<>())
+                .computeIfAbsent(pid, p -> new AtomicInteger()).incrementAndGet();
+    }
 
-        for (int i=0;i<pool.length;i++){
-            if (pool[i]==null){
-                pool[i] = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
-                clock[i] = true;
-                return pool[i];
+    /**
+     * Release one pin tid took on pid with getPinnedPage, once tid no longer uses
+     * the page object it got (e.g. a scan moving on to the next page). A
+     * page stays cached while pinned; pins left over are released when tid
+     * completes. Does nothing if tid holds no pin on pid.
+     */
+    public void unpinPage(TransactionId tid, PageId pid) {
+        ConcurrentHashMap<PageId, AtomicInteger> held = pinned.get(tid);
+        AtomicInteger count = held == null ? null : held.get(pid);
+        if (count != null && count.getAndUpdate(c -> c > 0 ? c - 1 : 0) > 0){
+            partitionFor(pid).unpin(pid);
+        }
+    }
+
+    /** Release every pin tid holds on pid, or on all pages if pid is null. */
+    private void releasePins(TransactionId tid, PageId pid) {
+        ConcurrentHashMap<PageId, AtomicInteger> held = pid == null ? pinned.remove(tid) : pinned.get(tid);
+        if (held == null){
+            return;
+        }
+        for (Map.Entry<PageId, AtomicInteger> e : held.entrySet()){
+            if (pid == null || pid.equals(e.getKey())){
+                for (int n = e.getValue().getAndSet(0); n > 0; n--){
+                    partitionFor(e.getKey()).unpin(e.getKey());
+                }
             }
         }
-        evictPage();
-        for (int i=0;i<pool.length;i++){
-            if (pool[i]==null){
-                pool[i] = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
-                clock[i] = true;
-                return pool[i];
+    }
+
+    /** Return the number of pins held on pid's frame, 0 if pid is not cached. */
+    public int getPinCount(PageId pid) {
+        return partitionFor(pid).pinCount(pid);
+    }
+
+    /** Return the number of frames currently pinned. */
+    public int getNumPinnedPages() {
+        int n = 0;
+        for (Partition part : partitions){
+            n += part.numPinned();
+        }
+        return n;
+    }
+
+    /**
+     * Lock pid for tid under the granularity hierarchy: an intention lock on
+     * the page's table, then a shared or exclusive lock on the page, unless a
+     * table lock tid holds already covers the page.
+     */
+    void lockPage(TransactionId tid, PageId pid, Permissions perm)
+        throws TransactionAbortedException {
+        Optimistic occ = optimistic.get(tid);
+        if (occ != null && !occ.validating){
+            // locked at validation
+            return;
+        }
+        boolean write = perm == Permissions.READ_WRITE;
+        LockManager.TableKey table = new LockManager.TableKey(pid.getTableId());
+        if (write){
+            touch(tid, pid);
+        }
+        LockManager.LockType held = lockManager.getLockType(tid, table);
+        if (held != null && held.covers(write ? LockManager.LockType.XLock : LockManager.LockType.SLock)){
+            return;
+        }
+        lockManager.acquireLock(tid, table, write ? LockManager.LockType.IXLock : LockManager.LockType.ISLock);
+        lockManager.acquireLock(tid, pid, write ? LockManager.LockType.XLock : LockManager.LockType.SLock);
+    }
+
+    private void touch(TransactionId tid, PageId pid) {
+        touched.computeIfAbsent(tid, t -> ConcurrentHashMap.newKeySet()).add(pid);
+    }
+
+    /**
+     * Lock a whole table for tid: shared for READ_ONLY, exclusive for
+     * READ_WRITE. Covers every page of the table, so getPage takes no page
+     * locks for it afterwards; a scan of a big table takes one lock instead
+     * of one per page. May block like getPage.
+     */
+    public void lockTable(TransactionId tid, int tableId, Permissions perm)
+        throws TransactionAbortedException {
+        if (versions.snapshotOf(tid) != null){
+            return;
+        }
+        lockManager.acquireLock(tid, new LockManager.TableKey(tableId),
+                perm == Permissions.READ_WRITE ? LockManager.LockType.XLock : LockManager.LockType.SLock);
+    }
+
+    /**
+     * Retrieve the specified page for a bulk read through ring. Like
+     * {@link #getPage(TransactionId, PageId, Permissions)}, but a read-only
+     * request for a page that is not cached is read into the ring instead of
+     * a frame of the pool, so a large scan does not push the pool's hot pages
+     * out. Pages already cached are still returned from the pool, and the
+     * page lock is acquired as usual.
+     *
+     * @param ring the scan's ring, from {@link #newScanRing}; null means no ring
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+        throws TransactionAbortedException, DbException {
+        return getPage(tid, pid, perm, ring, false);
+    }
+
+    /** Return pid from the pool if cached, else from ring, reading it into ring if needed. */
+    private Page readThroughRing(PageId pid, BufferRing ring) {
+        Page page = partitionFor(pid).lookup(pid);
+        return page != null ? page : readIntoRing(pid, ring);
+    }
+
+    /** Return pid from ring, reading it into ring if needed. */
+    private Page readIntoRing(PageId pid, BufferRing ring) {
+        Page page = ring.get(pid, writeEpoch.get());
+        if (page == null){
+            long epoch = writeEpoch.get();
+            page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+            ring.add(page, epoch);
+        }
+        return page;
+    }
+
+    /**
+     * Return the version of pid committed as of the snapshot time. No lock
+     * is taken: the page returned is a private copy of a committed version,
+     * which later commits never change.
+     */
+    private Page getSnapshotPage(PageId pid, long snapshot, Permissions perm, BufferRing ring)
+        throws DbException {
+        if (perm == Permissions.READ_WRITE){
+            throw new DbException("snapshot transactions are read-only");
+        }
+        Page page = versions.lookup(pid, snapshot);
+        if (page != null){
+            return page;
+        }
+        Page live = ring == null ? partitionFor(pid).fetch(pid, false) : readThroughRing(pid, ring);
+        return live == null ? null : versions.read(pid, snapshot, live);
+    }
+
+    /**
+     * Return pid as optimistic transaction occ sees it: its private copy if
+     * it writes the page, else the version of its snapshot, which becomes a
+     * private copy if perm is READ_WRITE. No lock is taken.
+     */
+    private Page getOptimisticPage(Optimistic occ, PageId pid, Permissions perm, BufferRing ring)
+        throws DbException {
+        Page copy = occ.writes.get(pid);
+        if (copy != null){
+            return copy;
+        }
+        Page committed = getSnapshotPage(pid, occ.snapshot, Permissions.READ_ONLY, ring);
+        if (committed == null){
+            return null;
+        }
+        occ.accessed.add(pid);
+        if (perm == Permissions.READ_WRITE){
+            // snapshot versions are shared with other readers
+            copy = committed.getBeforeImage();
+            occ.writes.put(pid, copy);
+            return copy;
+        }
+        return committed;
+    }
+
+    /**
+     * Start tid as an optimistic transaction. It reads the database as of
+     * the last commit before this call and buffers its writes, taking no
+     * locks, until {@link #validateOptimistic} checks at commit that nothing
+     * it read or wrote was changed meanwhile. Meant for short transactions
+     * that rarely conflict, for which locking every page is pure overhead.
+     */
+    public void beginOptimistic(TransactionId tid) {
+        versions.begin(tid);
+        optimistic.put(tid, new Optimistic(versions.snapshotOf(tid)));
+    }
+
+    /** Return true if tid is an optimistic transaction not validated yet. */
+    public boolean isOptimistic(TransactionId tid) {
+        return optimistic.containsKey(tid);
+    }
+
+    /**
+     * Validate optimistic transaction tid before it commits: lock the pages
+     * it wrote exclusively, then check, under the version store's monitor,
+     * that no transaction committed a change since tid's snapshot to any
+     * page it read or wrote, nor is about to. Pages it only read are not
+     * locked; their commit timestamps suffice. On success tid's private
+     * copies are installed in the pool as pages dirtied by tid, so it
+     * commits like any other transaction, and its locks keep the pages
+     * unchanged until it does.
+     * Does nothing if tid is not optimistic or already validated.
+     *
+     * @throws TransactionAbortedException if validation fails or a lock
+     *     cannot be granted (e.g. deadlock); tid must then abort
+     */
+    public void validateOptimistic(TransactionId tid) throws TransactionAbortedException, DbException {
+        Optimistic occ = optimistic.get(tid);
+        if (occ == null){
+            return;
+        }
+        occ.validating = true;
+        // in page order, so that validating transactions never deadlock each other
+        List<PageId> writes = new ArrayList<>(occ.writes.keySet());
+        writes.sort(Comparator.comparingInt(PageId::getTableId).thenComparingInt(PageId::getPageNumber));
+        for (PageId pid : writes){
+            lockPage(tid, pid, Permissions.READ_WRITE);
+        }
+        if (!versions.validate(tid, occ.accessed, writes)){
+            throw new TransactionAbortedException();
+        }
+        for (Page copy : occ.writes.values()){
+            partitionFor(copy.getId()).install(copy);
+        }
+        optimistic.remove(tid);
+    }
+
+    /**
+     * Start tid as a read-only snapshot transaction. It sees the database as
+     * of the last commit before this call, takes no locks, so it never waits
+     * for writers nor makes them wait, and may not update anything. Commit
+     * or abort ends the snapshot.
+     */
+    public void beginSnapshot(TransactionId tid) {
+        versions.begin(tid);
+    }
+
+    /** Return true if tid is a running snapshot transaction. */
+    public boolean isSnapshot(TransactionId tid) {
+        return versions.snapshotOf(tid) != null && !optimistic.containsKey(tid);
+    }
+
+    /**
+     * Start reading pid in the background so that a later getPage finds it
+     * without waiting for the disk. With a ring the page is read into the
+     * ring, otherwise into the pool (if a clean frame can be freed for it).
+     * No lock is taken: a pool read-ahead happens under the partition latch
+     * and a page that is not cached is current on disk, and a ring page is
+     * thrown away if any page was written back between its read and its use.
+     *
+     * @param ring the scan's ring, or null to read into the pool
+     */
+    public void prefetch(PageId pid, BufferRing ring) {
+        if (ring == null){
+            Partition part = partitionFor(pid);
+            submitRead(() -> part.prefetch(pid));
+        }else if (!ring.contains(pid)){
+            long epoch = writeEpoch.get();
+            ring.add(pid, CompletableFuture.supplyAsync(
+                    () -> Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid),
+                    IoExecutor.INSTANCE), epoch);
+        }
+    }
+
+    /**
+     * Read up to n pages into the pool in the background, starting at first
+     * and following next from each page read to the id of the following one
+     * (e.g. a B+ tree leaf's right sibling). Stops early when next returns
+     * null or a page cannot be read.
+     */
+    public void prefetchChain(PageId first, int n, Function<Page, PageId> next) {
+        submitRead(() -> {
+            PageId pid = first;
+            for (int i = 0; i < n && pid != null; i++){
+                Page p = partitionFor(pid).prefetch(pid);
+                if (p == null){
+                    return;
+                }
+                pid = next.apply(p);
+            }
+        });
+    }
+
+    private void submitRead(Runnable read) {
+        IoExecutor.INSTANCE.execute(() -> {
+            try {
+                read.run();
+            }catch (RuntimeException e){
+                // read-ahead is only a hint; the scan will read the page itself
             }
+        });
+    }
+
+    /** Return the number of pages sequential scans read ahead. */
+    public int getPrefetchPages() {
+        return prefetchPages;
+    }
+
+    /** Set the number of pages sequential scans read ahead; 0 turns read-ahead off. */
+    public void setPrefetchPages(int prefetchPages) {
+        this.prefetchPages = Math.max(0, prefetchPages);
+    }
+
+    /**
+     * Return a ring for a scan over a table of tablePages pages, or null if the
+     * table fits in the pool. Tables that fit are scanned through the pool so a
+     * rescan finds them cached; bigger ones could never stay cached anyway.
+     * Pools smaller than the ring itself get no ring either, as it would not
+     * save them any memory.
+     */
+    public BufferRing newScanRing(int tablePages) {
+        // leave room for the read-ahead window on top of the pages in use
+        int ringPages = Math.min(BufferRing.MAX_RING_PAGES, Math.max(2, numPages/8)) + prefetchPages;
+        if (tablePages <= numPages || ringPages > numPages){
+            return null;
         }
+        return new BufferRing(ringPages);
+    }
 
-        // Page not found. release the lock
-        lockManager.releaseLock(tid, pid);
-        return null;
+    /** Return the lock manager behind this pool's page locks, e.g. to tune lock escalation. */
+    public LockManager getLockManager() {
+        return lockManager;
+    }
+
+    /** Return the number of frames in this buffer pool, as last set by the constructor or resize. */
+    public int getNumPages() {
+        return numPages;
     }
 
     /**
@@ -129,17 +1252,20 @@ public class BufferPool {
         // some code goes here
         // not necessary for lab1|lab2
         lockManager.releaseLock(tid, pid);
+        releasePins(tid, pid);
     }
 
     /**
      * Release all locks associated with a given transaction.
      *
      * @param tid the ID of the transaction requesting the unlock
+     * @return false if tid is optimistic and failed validation; it is then
+     *     still running and must be aborted
      */
-    public void transactionComplete(TransactionId tid){
+    public boolean transactionComplete(TransactionId tid){
         // some code goes here
         // not necessary for lab1|lab2
-        transactionComplete(tid, true);
+        return transactionComplete(tid, true);
     }
 
     /** Return true if the specified transaction has a lock on the specified page */
@@ -151,31 +1277,138 @@ public class BufferPool {
 
     /**
      * Commit or abort a given transaction; release all locks associated to
-     * the transaction.
+     * the transaction. An optimistic transaction not validated yet is
+     * validated first. If that fails nothing is committed or released and
+     * false is returned: tid is still running, and the caller must abort it
+     * (and must not log a commit for it).
      *
      * @param tid the ID of the transaction requesting the unlock
      * @param commit a flag indicating whether we should commit or abort
+     * @return false if commit was requested and validation failed
      */
-    public void transactionComplete(TransactionId tid, boolean commit){
+    public boolean transactionComplete(TransactionId tid, boolean commit){
         // some code goes here
         // not necessary for lab1|lab2
-        if (commit){
-            for (int i = 0; i<pool.length;i++){
-                if (pool[i]!=null&&pool[i].isDirty()!=null&&pool[i].isDirty().equals(tid)){
-                    flushPage(pool[i].getId());
-                }
+        if (commit && optimistic.containsKey(tid)){
+            try {
+                validateOptimistic(tid);
+            }catch (TransactionAbortedException | DbException e){
+                return false;
             }
-            lockManager.releaseTransaction(tid);
-        }else {
-            for (int i = 0; i<pool.length;i++){
-                if (pool[i]!=null&&pool[i].isDirty()!=null&&pool[i].isDirty().equals(tid)){
-                    PageId pid = pool[i].getId();
-                    pool[i] = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+        }
+        if (optimistic.remove(tid) != null){
+            versions.end(tid);
+        }else if (versions.snapshotOf(tid) != null && versions.end(tid)){
+            return true;
+        }
+        Set<PageId> pids = touched.remove(tid);
+        try {
+            if (commit && !forceOnCommit){
+                commitNoForce(tid, pids == null ? Collections.emptyList() : dirtiedBy(tid, pids));
+            }else if (pids == null){
+                // nothing to write or restore
+            }else if (commit){
+                List<Page> dirtied = dirtiedBy(tid, pids);
+                publish(dirtied);
+                writeBatch(dirtied);
+            }else {
+                for (PageId pid : pids){
+                    Page restored = partitionFor(pid).restore(pid, tid);
+                    if (restored != null){
+                        Database.getCatalog().getDatabaseFile(pid.getTableId()).pageRestored(restored);
+                    }
                 }
             }
-            lockManager.releaseTransaction(tid);
+        }catch (IOException e){
+            e.printStackTrace();
         }
+        versions.committed(tid);
+        releasePins(tid, null);
+        lockManager.releaseTransaction(tid);
+        return true;
+    }
 
+    /**
+     * NO FORCE commit: log the pages tid dirtied and tid's commit record and
+     * force the log before handing the pages to the cleaner, so none reaches
+     * disk ahead of its log record (WAL), and before tid's locks are
+     * released, so no transaction builds on updates that a crash could
+     * still roll back. tid's exclusive locks keep the pages unchanged
+     * meanwhile.
+     */
+    private void commitNoForce(TransactionId tid, List<Page> dirtied) throws IOException {
+        LogFile log = Database.getLogFile();
+        for (Page p : dirtied){
+            log.logWrite(tid, p.getBeforeImage(), p);
+        }
+        log.logCommit(tid);
+        if (dirtied.isEmpty()){
+            return;
+        }
+        publish(dirtied);
+        for (Page p : dirtied){
+            partitionFor(p.getId()).markCommitted(p.getId(), tid);
+        }
+        PageCleaner c = cleaner;
+        if (c != null && numCommittedDirty.get() > numPages/2){
+            c.wake();
+        }
+    }
+
+    /** Return the cached pages among pids that tid dirtied. */
+    private List<Page> dirtiedBy(TransactionId tid, Set<PageId> pids) {
+        List<Page> dirtied = new ArrayList<>();
+        for (PageId pid : pids){
+            Page p = partitionFor(pid).peek(pid);
+            if (p != null && tid.equals(p.isDirty())){
+                dirtied.add(p);
+            }
+        }
+        return dirtied;
+    }
+
+    /**
+     * Write pages back, each table's with one {@link DbFile#writePages}
+     * call, and mark them clean. The pages' writers hold exclusive locks on
+     * them, and dirty pages of live transactions are never evicted, so no
+     * latch is held during the writes.
+     */
+    private void writeBatch(List<Page> pages) throws IOException {
+        if (pages.isEmpty()){
+            return;
+        }
+        Map<Integer, List<Page>> byTable = new HashMap<>();
+        for (Page p : pages){
+            byTable.computeIfAbsent(p.getId().getTableId(), t -> new ArrayList<>()).add(p);
+        }
+        writeEpoch.incrementAndGet();
+        for (Map.Entry<Integer, List<Page>> e : byTable.entrySet()){
+            Database.getCatalog().getDatabaseFile(e.getKey()).writePages(e.getValue());
+        }
+        for (Page p : pages){
+            partitionFor(p.getId()).written(p);
+        }
+    }
+
+    /**
+     * Make the committed contents of pages the new committed versions: keep
+     * the versions they replace for open snapshots, then reset the pages'
+     * before images. All of one commit becomes visible to snapshots at once.
+     * The pages stay in the pool (NO STEAL) until this returns, so a snapshot
+     * never reads them from disk half way.
+     */
+    private void publish(List<Page> dirtied) {
+        if (dirtied.isEmpty()){
+            return;
+        }
+        synchronized (versions){
+            long ts = versions.nextCommit();
+            for (Page p : dirtied){
+                versions.retire(p, ts);
+                p.setBeforeImage();
+            }
+            versions.publish(ts);
+        }
     }
 
     /**
@@ -197,7 +1430,10 @@ public class BufferPool {
         throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
-        Database.getCatalog().getDatabaseFile(tableId).insertTuple(tid, t);
+        if (isSnapshot(tid)){
+            throw new DbException("snapshot transactions are read-only");
+        }
+        installDirtied(tid, Database.getCatalog().getDatabaseFile(tableId).insertTuple(tid, t));
 
     }
 
@@ -218,28 +1454,43 @@ public class BufferPool {
         throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
+        if (isSnapshot(tid)){
+            throw new DbException("snapshot transactions are read-only");
+        }
         int toDeleteTableId = t.getRecordId().getPageId().getTableId();
-        Database.getCatalog().getDatabaseFile(toDeleteTableId).deleteTuple(tid, t);
+        installDirtied(tid, Database.getCatalog().getDatabaseFile(toDeleteTableId).deleteTuple(tid, t));
 
     }
 
+    /**
+     * Mark the pages a DbFile update dirtied as dirtied by tid and cache
+     * them, or keep them as its private copies if tid is optimistic.
+     */
+    private void installDirtied(TransactionId tid, List<Page> dirtied) throws DbException {
+        Optimistic occ = optimistic.get(tid);
+        for (Page p : dirtied){
+            p.markDirty(true, tid);
+            if (occ != null){
+                occ.accessed.add(p.getId());
+                occ.writes.put(p.getId(), p);
+            }else {
+                touch(tid, p.getId());
+                partitionFor(p.getId()).install(p);
+            }
+        }
+    }
+
     /**
      * Flush all dirty pages to disk.
      * NB: Be careful using this routine -- it writes dirty data to disk so will
      *     break simpledb if running in NO STEAL mode.
      */
-    public synchronized void flushAllPages(){
+    public void flushAllPages(){
         // some code goes here
         // not necessary for lab1
         try {
-            for (Page p : pool){
-                if (p==null){
-                    continue;
-                }
-                if (p.isDirty()!=null){
-                    Database.getCatalog().getDatabaseFile(p.getId().getTableId()).writePage(p);
-                    p.markDirty(false, null);
-                }
+            for (Partition part : partitions){
+                part.flushAll();
             }
         }catch (IOException e){
             e.printStackTrace();
@@ -255,34 +1506,24 @@ public class BufferPool {
         Also used by B+ tree files to ensure that deleted pages
         are removed from the cache so they can be reused safely
     */
-    public synchronized void discardPage(PageId pid) {
+    public void discardPage(PageId pid) {
         // some code goes here
         // not necessary for lab1
-
-        for (int i =0; i< pool.length; i++){
-            if (pool[i].getId().equals(pid)){
-                pool[i] = null;
-                return;
-            }
-        }
+        // a read-ahead of pid in flight may be reading a version that is
+        // about to be rewritten (rollback, B+ tree page reuse)
+        writeEpoch.incrementAndGet();
+        partitionFor(pid).discard(pid);
     }
 
     /**
      * Flushes a certain page to disk
      * @param pid an ID indicating the page to flush
      */
-    private synchronized  void flushPage(PageId pid){
+    private void flushPage(PageId pid){
         // some code goes here
         // not necessary for lab1
         try {
-            Page toFlush = null;
-            for (Page p : pool){
-                if (p!=null&&p.getId().equals(pid)){
-                    toFlush = p;
-                }
-            }
-            Database.getCatalog().getDatabaseFile(((HeapPageId)pid).tableId).writePage(toFlush);
-            toFlush.markDirty(false, null);
+            partitionFor(pid).flush(pid);
         }catch (IOException e){
             e.printStackTrace();
         }
@@ -294,33 +1535,10 @@ public class BufferPool {
     public synchronized  void flushPages(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
-
-    }
-
-    /**
-     * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
-     */
-    private synchronized void evictPage() throws DbException {
-        // some code goes here
-        // not necessary for lab1
-        int tick = 0;
-        int dirtyPages = 0;
-
-            // Skip the page if it was accessed in the last run or it is dirty.
-            while (clock[tick%numPages]||pool[tick%numPages].isDirty()!=null){
-                clock[tick%numPages] = false;
-                if (pool[tick%numPages].isDirty()!=null){
-                    dirtyPages++;
-                    if (dirtyPages>numPages){
-                        throw new DbException("Full of dirty pages");
-                    }
-                }
-                tick++;
-            }
-            flushPage(pool[tick%numPages].getId());
-            discardPage(pool[tick%numPages].getId());
-
+        Set<PageId> pids = touched.get(tid);
+        if (pids != null){
+            writeBatch(dirtiedBy(tid, pids));
+        }
     }
 
 }
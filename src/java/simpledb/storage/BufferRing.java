@@ -0,0 +1,85 @@
+package simpledb.storage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A small private set of page slots that a bulk read cycles through, in the
+ * spirit of PostgreSQL's ring buffers. Pages read through a ring never enter
+ * the shared pool; the oldest slot is simply overwritten, so the ring holds
+ * at most its size in pages no matter how big the scanned table is.
+ * <p>
+ * A slot may hold a page that is still being read ahead in the background.
+ * Each slot remembers the pool's write epoch from before its read started,
+ * and a page is only handed out while that epoch is still current.
+ * <p>
+ * A ring belongs to a single iterator and is not thread-safe.
+ *
+ * @see BufferPool#newScanRing
+ */
+public class BufferRing {
+    /** Upper bound on ring size: 32 pages, 128 KB with the default page size. */
+    public static final int MAX_RING_PAGES = 32;
+
+    private final PageId[] ids;
+    private final Future<Page>[] pages;
+    private final long[] epochs;
+    private int next = 0;
+
+    @SuppressWarnings("unchecked")
+    public BufferRing(int numPages) {
+        ids = new PageId[numPages];
+        pages = new Future[numPages];
+        epochs = new long[numPages];
+    }
+
+    /**
+     * Return the page with the given id if it is still in the ring and was
+     * read in the given write epoch, waiting for it if it is being read ahead.
+     * Returns null otherwise.
+     */
+    public Page get(PageId pid, long epoch) {
+        for (int i = 0; i < ids.length; i++){
+            if (ids[i] != null && ids[i].equals(pid)){
+                if (epochs[i] != epoch){
+                    return null;
+                }
+                try {
+                    return pages[i].get();
+                }catch (InterruptedException | ExecutionException e){
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Return true if pid is in the ring or being read into it. */
+    public boolean contains(PageId pid) {
+        for (PageId id : ids){
+            if (id != null && id.equals(pid)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Put p, read in the given write epoch, in the ring, replacing the oldest page. */
+    public void add(Page p, long epoch) {
+        add(p.getId(), CompletableFuture.completedFuture(p), epoch);
+    }
+
+    /** Put a page that is being read, in the given write epoch, in the ring. */
+    public void add(PageId pid, Future<Page> page, long epoch) {
+        ids[next] = pid;
+        pages[next] = page;
+        epochs[next] = epoch;
+        next = (next+1)%ids.length;
+    }
+
+    /** Return the number of slots in this ring. */
+    public int size() {
+        return ids.length;
+    }
+}
@@ -0,0 +1,57 @@
+package simpledb.storage;
+
+import java.util.function.IntPredicate;
+
+/**
+ * One-bit clock (second chance): a frame's reference bit is set on every
+ * access and cleared as the hand sweeps past it; the first evictable frame
+ * found with a clear bit is the victim.
+ */
+public class ClockPolicy implements ReplacementPolicy {
+    private final boolean[] clock;
+    private final boolean[] used;
+    private int hand = 0;
+
+    public ClockPolicy(int numFrames) {
+        clock = new boolean[numFrames];
+        used = new boolean[numFrames];
+    }
+
+    @Override
+    public void admit(int frame, PageId pid) {
+        used[frame] = true;
+        clock[frame] = true;
+    }
+
+    @Override
+    public void touch(int frame) {
+        clock[frame] = true;
+    }
+
+    @Override
+    public void remove(int frame) {
+        used[frame] = false;
+        clock[frame] = false;
+    }
+
+    @Override
+    public int victim(IntPredicate evictable) {
+        // the first pass clears every reference bit, so two passes are enough
+        for (int i = 0; i < 2 * clock.length; i++){
+            int frame = hand;
+            hand = (hand+1)%clock.length;
+            // Skip the page if it was accessed in the last run or it cannot be evicted.
+            if (!used[frame]){
+                continue;
+            }
+            if (clock[frame]){
+                clock[frame] = false;
+                continue;
+            }
+            if (evictable.test(frame)){
+                return frame;
+            }
+        }
+        return -1;
+    }
+}
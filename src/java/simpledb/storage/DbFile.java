@@ -33,6 +33,20 @@ public interface DbFile {
      */
     void writePage(Page p) throws IOException;
 
+    /**
+     * Push several pages of this file to disk, e.g. all the pages a
+     * transaction dirtied when it commits. Files that can write adjacent
+     * pages together should override this.
+     *
+     * @param pages The pages to write, in no particular order.
+     * @throws IOException if a write fails
+     */
+    default void writePages(List<Page> pages) throws IOException {
+        for (Page p : pages){
+            writePage(p);
+        }
+    }
+
     /**
      * Inserts the specified tuple to the file on behalf of transaction.
      * This method will acquire a lock on the affected pages of the file, and
@@ -73,6 +87,16 @@ public interface DbFile {
      */
     DbFileIterator iterator(TransactionId tid);
 
+    /**
+     * Like {@link #iterator}, but the iterator may return the same
+     * {@link TupleView} for many rows, moved to the next row on each call to
+     * next(), instead of a new Tuple per row. Files without views return
+     * {@link #iterator}.
+     */
+    default DbFileIterator viewIterator(TransactionId tid) {
+        return iterator(tid);
+    }
+
     /**
      * Returns a unique ID used to identify this DbFile in the Catalog. This id
      * can be used to look up the table via {@link Catalog#getDatabaseFile} and
@@ -93,4 +117,19 @@ public interface DbFile {
      * @return TupleDesc of this DbFile.
      */
     TupleDesc getTupleDesc();
+
+    /**
+     * Called by the buffer pool when an abort put back the before image of
+     * a page of this file, for files that keep information derived from
+     * their pages' contents.
+     */
+    default void pageRestored(Page page) {
+    }
+
+    /**
+     * Release any open handle on the backing file. Called when the file is
+     * removed from the {@link Catalog}; a later read or write may reopen it.
+     */
+    default void close() throws IOException {
+    }
 }
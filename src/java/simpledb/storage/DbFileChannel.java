@@ -0,0 +1,87 @@
+package simpledb.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The open handle of a DbFile's backing file. Pages are read and written
+ * with positional FileChannel I/O, which does not move a shared file
+ * pointer, so any number of threads can use one DbFileChannel at once.
+ * <p>
+ * The channel is opened on first use and reopened on the next use after
+ * {@link #close()} (or after an interrupted thread closed it), so a DbFile
+ * that outlives its catalog entry still works. Only a write creates a
+ * missing file; a read of one fails, as it did through RandomAccessFile.
+ *
+ * @Threadsafe
+ */
+public class DbFileChannel implements Closeable {
+    private final File f;
+    private volatile FileChannel channel;
+
+    public DbFileChannel(File f) {
+        this.f = f;
+    }
+
+    /** Return the open channel, opening it first, and creating the file if create is set. */
+    private FileChannel channel(boolean create) throws IOException {
+        FileChannel c = channel;
+        if (c == null || !c.isOpen()){
+            synchronized (this){
+                c = channel;
+                if (c == null || !c.isOpen()){
+                    c = create
+                            ? FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE, StandardOpenOption.CREATE)
+                            : FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE);
+                    channel = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Read up to buf.length bytes starting at offset into buf. Bytes past the
+     * end of the file are left untouched.
+     *
+     * @return the number of bytes read, or -1 if offset is past the end of the file
+     * @throws java.nio.file.NoSuchFileException if the file does not exist
+     */
+    public int read(byte[] buf, long offset) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(buf);
+        FileChannel c = channel(false);
+        int total = 0;
+        while (bb.hasRemaining()){
+            int n = c.read(bb, offset + total);
+            if (n == -1){
+                return total == 0 ? -1 : total;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /** Write all of data to the file starting at offset, creating the file if it does not exist. */
+    public void write(byte[] data, long offset) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        FileChannel c = channel(true);
+        while (bb.hasRemaining()){
+            c.write(bb, offset + bb.position());
+        }
+    }
+
+    /** Close the channel; the next read or write opens it again. */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null){
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The free space of each page of a HeapFile, so that an insert goes
+ * straight to a page with room instead of trying every page from the
+ * first. An entry is only a hint: the inserter still checks the page with
+ * {@link HeapPage#hasRoomFor} and corrects the entry when it was wrong.
+ * <p>
+ * An entry is the free bytes of a page (see {@link HeapPage#getFreeSpace})
+ * as an unsigned short, or {@link #UNKNOWN} for a page not seen yet, which
+ * may have any amount of room. Entries are kept in memory along with the
+ * largest entry of each block of {@link #BLOCK} pages, so a search skips
+ * full blocks. They are also written to a side file, the table's file name
+ * plus ".fsm", when the table's pages are written, so they survive a
+ * restart. {@link HeapFileEncoder} writes the side file of the tables it
+ * creates.
+ *
+ * @Threadsafe
+ */
+public class FreeSpaceMap {
+    public static final int UNKNOWN = 0xffff;
+    static final int BLOCK = 256;
+
+    private final DbFileChannel channel;
+    private int[] free = new int[0];
+    private int[] blockMax = new int[0];
+    /** Entries in the side file; a write never leaves a gap of zeroes after them. */
+    private int persisted;
+
+    /**
+     * Open the free-space map of tableFile, which has numPages pages. A
+     * side file with entries for more pages than that belongs to an older
+     * table that was replaced, and is dropped.
+     */
+    public FreeSpaceMap(File tableFile, int numPages) {
+        File file = fileFor(tableFile);
+        if (file.length() > 2L*numPages){
+            file.delete();
+        }
+        channel = new DbFileChannel(file);
+        persisted = (int) (file.length()/2);
+        if (file.length() > 0){
+            byte[] data = new byte[(int) file.length()];
+            try {
+                channel.read(data, 0);
+                grow(data.length/2);
+                for (int i = 0; i < data.length/2; i++){
+                    free[i] = ((data[2*i] & 0xff) << 8) | (data[2*i+1] & 0xff);
+                }
+                for (int b = 0; b < blockMax.length; b++){
+                    updateBlock(b);
+                }
+            }catch (IOException e){
+                // start over; every page is unknown
+                Arrays.fill(free, UNKNOWN);
+                Arrays.fill(blockMax, UNKNOWN);
+            }
+        }
+    }
+
+    /** The side file holding the free-space map of tableFile. */
+    public static File fileFor(File tableFile) {
+        return new File(tableFile.getPath() + ".fsm");
+    }
+
+    /**
+     * Write the side file for pages with the given free space, as
+     * HeapFileEncoder does for a table it creates.
+     */
+    static void write(File tableFile, int[] pagesFree) throws IOException {
+        byte[] data = new byte[2*pagesFree.length];
+        for (int i = 0; i < pagesFree.length; i++){
+            int v = Math.min(pagesFree[i], UNKNOWN-1);
+            data[2*i] = (byte) (v >> 8);
+            data[2*i+1] = (byte) v;
+        }
+        File file = fileFor(tableFile);
+        file.delete();
+        try (DbFileChannel c = new DbFileChannel(file)) {
+            c.write(data, 0);
+        }
+    }
+
+    private void grow(int pages) {
+        if (pages <= free.length){
+            return;
+        }
+        int len = Math.max(pages, 2*free.length);
+        int old = free.length;
+        free = Arrays.copyOf(free, len);
+        Arrays.fill(free, old, len, UNKNOWN);
+        int oldBlocks = blockMax.length;
+        blockMax = Arrays.copyOf(blockMax, (len + BLOCK - 1)/BLOCK);
+        Arrays.fill(blockMax, oldBlocks, blockMax.length, UNKNOWN);
+        if (oldBlocks > 0){
+            updateBlock(oldBlocks - 1);
+        }
+    }
+
+    private void updateBlock(int b) {
+        int max = 0;
+        for (int i = b*BLOCK; i < Math.min((b+1)*BLOCK, free.length); i++){
+            max = Math.max(max, free[i]);
+        }
+        blockMax[b] = max;
+    }
+
+    /** Return the entry of page pageNo. */
+    public synchronized int get(int pageNo) {
+        return pageNo < free.length ? free[pageNo] : UNKNOWN;
+    }
+
+    /** Record that page pageNo has bytes free bytes. */
+    public synchronized void set(int pageNo, int bytes) {
+        grow(pageNo + 1);
+        int old = free[pageNo];
+        free[pageNo] = Math.min(bytes, UNKNOWN - 1);
+        int b = pageNo/BLOCK;
+        if (free[pageNo] > blockMax[b]){
+            blockMax[b] = free[pageNo];
+        }else if (old == blockMax[b] && free[pageNo] < old){
+            updateBlock(b);
+        }
+    }
+
+    /**
+     * Return the first of the file's numPages pages whose entry is at least
+     * needed bytes (or unknown), or -1 if there is none.
+     */
+    public synchronized int find(int needed, int numPages) {
+        int known = Math.min(free.length, numPages);
+        for (int b = 0; b*BLOCK < known; b++){
+            if (blockMax[b] < needed){
+                continue;
+            }
+            for (int i = b*BLOCK; i < Math.min((b+1)*BLOCK, known); i++){
+                if (free[i] >= needed){
+                    return i;
+                }
+            }
+        }
+        return known < numPages ? known : -1;
+    }
+
+    /** Write the entries of pages from to to (inclusive) to the side file. */
+    public synchronized void persist(int from, int to) throws IOException {
+        from = Math.min(from, persisted);
+        byte[] data = new byte[2*(to - from + 1)];
+        for (int i = from; i <= to; i++){
+            int v = get(i);
+            data[2*(i-from)] = (byte) (v >> 8);
+            data[2*(i-from)+1] = (byte) v;
+        }
+        channel.write(data, 2L*from);
+        persisted = Math.max(persisted, to + 1);
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
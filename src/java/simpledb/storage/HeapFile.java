@@ -1,6 +1,5 @@
 package simpledb.storage;
 
-import simpledb.LockManager;
 import simpledb.common.*;
 import simpledb.transaction.Transaction;
 import simpledb.transaction.TransactionAbortedException;
@@ -23,6 +22,10 @@ public class HeapFile implements DbFile {
 
     File f;
     TupleDesc td;
+    /** Kept open between page reads and writes. */
+    final DbFileChannel channel;
+    /** Opened on first use; see {@link #getFreeSpaceMap}. */
+    private volatile FreeSpaceMap freeSpace;
 
     /**
      * Constructs a heap file backed by the specified file.
@@ -35,6 +38,7 @@ public class HeapFile implements DbFile {
         // some code goes here
         this.f = f;
         this.td = td;
+        this.channel = new DbFileChannel(f);
     }
 
     /**
@@ -79,14 +83,11 @@ public class HeapFile implements DbFile {
     @Override
     public Page readPage(PageId pid) {
         // some code goes here
-        int offset = pid.getPageNumber()*BufferPool.getPageSize();
+        long offset = (long) pid.getPageNumber()*BufferPool.getPageSize();
         byte[] data = new byte[BufferPool.getPageSize()];
         try {
-            RandomAccessFile rfile = new RandomAccessFile(f,"r");
-            rfile.seek(offset);
-            rfile.read(data);
-            rfile.close();
-            return new HeapPage((HeapPageId) pid,data);
+            channel.read(data, offset);
+            return createPage((HeapPageId) pid, data);
         }catch (Exception e){
             e.printStackTrace();
         }
@@ -94,23 +95,89 @@ public class HeapFile implements DbFile {
         return null;
     }
 
+    /** The bytes a page needs free for t to fit. */
+    protected int spaceNeeded(Tuple t) {
+        return td.getSize();
+    }
+
+    /** Return the free-space map of this file, loading it on first use. */
+    public synchronized FreeSpaceMap getFreeSpaceMap() {
+        if (freeSpace == null){
+            freeSpace = new FreeSpaceMap(f, numPages());
+        }
+        return freeSpace;
+    }
+
+    /** Parse data read from disk as the page pid of this file. */
+    protected HeapPage createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new HeapPage(pid, data);
+    }
+
     // see DbFile.java for javadocs
     @Override
     public void writePage(Page page) throws IOException {
         // some code goes here
         // not necessary for lab1
-        RandomAccessFile toWrite = null;
-        try {
-            toWrite = new RandomAccessFile(f,"rw");
-            toWrite.seek(page.getId().getPageNumber()*BufferPool.getPageSize());
-            toWrite.write(page.getPageData());
-        }catch (Exception e){
-            e.printStackTrace();
-        }finally {
-            toWrite.close();
+        channel.write(page.getPageData(), (long) page.getId().getPageNumber()*BufferPool.getPageSize());
+        FreeSpaceMap fsm = freeSpace;
+        if (fsm != null && page instanceof HeapPage){
+            int pageNo = page.getId().getPageNumber();
+            fsm.set(pageNo, ((HeapPage) page).getFreeSpace());
+            fsm.persist(pageNo, pageNo);
+        }
+    }
+
+    /** Write pages sorted by page number, each run of consecutive pages with a single write. */
+    @Override
+    public void writePages(List<Page> pages) throws IOException {
+        List<Page> sorted = new ArrayList<>(pages);
+        sorted.sort(Comparator.comparingInt(p -> p.getId().getPageNumber()));
+        int pageSize = BufferPool.getPageSize();
+        int i = 0;
+        while (i < sorted.size()){
+            int first = sorted.get(i).getId().getPageNumber();
+            int j = i + 1;
+            while (j < sorted.size() && sorted.get(j).getId().getPageNumber() == first + (j - i)){
+                j++;
+            }
+            if (j - i == 1){
+                channel.write(sorted.get(i).getPageData(), (long) first*pageSize);
+            }else {
+                byte[] run = new byte[(j - i)*pageSize];
+                for (int k = i; k < j; k++){
+                    System.arraycopy(sorted.get(k).getPageData(), 0, run, (k - i)*pageSize, pageSize);
+                }
+                channel.write(run, (long) first*pageSize);
+            }
+            i = j;
+        }
+        FreeSpaceMap fsm = freeSpace;
+        if (fsm != null && !sorted.isEmpty()){
+            for (Page p : sorted){
+                if (p instanceof HeapPage){
+                    fsm.set(p.getId().getPageNumber(), ((HeapPage) p).getFreeSpace());
+                }
+            }
+            fsm.persist(sorted.get(0).getId().getPageNumber(), sorted.get(sorted.size()-1).getId().getPageNumber());
         }
+    }
 
+    /** An abort undid changes to page: its free space is back to what it was. */
+    @Override
+    public void pageRestored(Page page) {
+        FreeSpaceMap fsm = freeSpace;
+        if (fsm != null && page instanceof HeapPage){
+            fsm.set(page.getId().getPageNumber(), ((HeapPage) page).getFreeSpace());
+        }
+    }
 
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        FreeSpaceMap fsm = freeSpace;
+        if (fsm != null){
+            fsm.close();
+        }
     }
 
     /**
@@ -131,34 +198,54 @@ public class HeapFile implements DbFile {
         BufferPool bufferPool = Database.getBufferPool();
         List<Page> modified = new ArrayList<>();
 
-        for (int i=0 ; i < numPages();i++){
+        // go straight to a page the free-space map says has room; a page
+        // that turns out full corrects its entry
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        int needed = spaceNeeded(t);
+        for (int i = fsm.find(needed, numPages()); i >= 0; i = fsm.find(needed, numPages())){
             PageId pid = new HeapPageId(tableId, i);
+            // a lock tid held before the probe is kept (strict 2PL)
+            boolean held = bufferPool.holdsLock(tid, pid);
             HeapPage p = (HeapPage) bufferPool.getPage(tid, pid,Permissions.READ_ONLY);
 
-            if ((p.getNumEmptySlots()>0)){
-                emptyPage = p;
-                bufferPool.lockManager.acquireLock(tid, pid, LockManager.LockType.XLock);
+            if (p.hasRoomFor(t)){
+                // upgrade; an optimistic transaction gets its private copy
+                emptyPage = (HeapPage) bufferPool.getPage(tid, pid, Permissions.READ_WRITE);
                 break;
             }else{
-                bufferPool.lockManager.releaseLock(tid, pid);
+                fsm.set(i, p.getFreeSpace());
+                if (!held){
+                    bufferPool.lockManager.releaseLock(tid, pid);
+                }
             }
         }
+        // an optimistic transaction's private copy may never be installed,
+        // so its insert leaves the entry as it was
+        boolean track = !bufferPool.isOptimistic(tid);
         if (emptyPage!=null){
             //synchronized (emptyPage){
                 emptyPage.insertTuple(t);
                 modified.add(emptyPage);
                 emptyPage.markDirty(true, tid);
             //}
+            if (track){
+                fsm.set(emptyPage.getId().getPageNumber(), emptyPage.getFreeSpace());
+            }
         }else {
-            HeapPageId emptyId = new HeapPageId(tableId,numPages());
-            emptyPage = new HeapPage(emptyId, HeapPage.createEmptyPageData());
-            bufferPool.lockManager.acquireLock(tid, emptyId, LockManager.LockType.XLock);
-            //synchronized (emptyPage){
-                emptyPage.insertTuple(t);
-                modified.add(emptyPage);
-                emptyPage.markDirty(true, tid);
-            //}
-            writePage(emptyPage);
+            // extend the file with an empty page and fill it in the pool, so the
+            // uncommitted tuple never reaches disk (or a snapshot reading it)
+            HeapPageId emptyId;
+            synchronized (this){
+                emptyId = new HeapPageId(tableId,numPages());
+                writePage(createPage(emptyId, HeapPage.createEmptyPageData()));
+            }
+            emptyPage = (HeapPage) bufferPool.getPage(tid, emptyId, Permissions.READ_WRITE);
+            emptyPage.insertTuple(t);
+            modified.add(emptyPage);
+            emptyPage.markDirty(true, tid);
+            if (track){
+                fsm.set(emptyId.getPageNumber(), emptyPage.getFreeSpace());
+            }
         }
 
         return modified;
@@ -171,13 +258,19 @@ public class HeapFile implements DbFile {
             TransactionAbortedException {
         // some code goes here
         ArrayList<Page> modified = new ArrayList<>();
+        BufferPool bufferPool = Database.getBufferPool();
         PageId pid = t.getRecordId().getPageId();
-        Page toDelete = Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+        Page toDelete = bufferPool.getPage(tid, pid, Permissions.READ_WRITE);
 
         synchronized (toDelete){
             ((HeapPage)toDelete).deleteTuple(t);
             toDelete.markDirty(true, tid);
         }
+        // as in insertTuple, an optimistic transaction's private copy may
+        // never be installed, so its delete leaves the entry as it was
+        if (!bufferPool.isOptimistic(tid)){
+            getFreeSpaceMap().set(pid.getPageNumber(), ((HeapPage) toDelete).getFreeSpace());
+        }
 
         modified.add(toDelete);
         return modified;
@@ -188,11 +281,28 @@ public class HeapFile implements DbFile {
     @Override
     public DbFileIterator iterator(TransactionId tid) {
         // some code goes here
+        return scan(tid, null);
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public DbFileIterator viewIterator(TransactionId tid) {
+        return scan(tid, new TupleView(getTupleDesc()));
+    }
+
+    /** An iterator over the file's tuples, returning unparsed records as view if it is not null. */
+    private DbFileIterator scan(TransactionId tid, TupleView view) {
         return new DbFileIterator() {
             int pageNo = -1;
             PageId currPageID;
             Iterator<Tuple> tupleIterator;
             int tableID;
+            // private frames for tables too big to scan through the pool
+            BufferRing ring;
+            // highest page number handed to the read-ahead so far
+            int readAheadTo;
+            // page pinned by the last getPage, unpinned once the scan moves on
+            PageId pinnedPageID;
 
             @Override
 
@@ -200,9 +310,45 @@ public class HeapFile implements DbFile {
                 pageNo = 0;
                 tableID = getId();
                 currPageID = new HeapPageId(tableID,0);
+                ring = Database.getBufferPool().newScanRing(numPages());
+                readAheadTo = 0;
+                if (ring != null){
+                    // one table lock instead of a lock per page of a table bigger than the pool
+                    Database.getBufferPool().lockTable(tid, tableID, Permissions.READ_ONLY);
+                }
+
+                tupleIterator = pageIterator();
 
-                tupleIterator = ((HeapPage)Database.getBufferPool().getPage(tid,currPageID,Permissions.READ_ONLY)).iterator();
+            }
+
+            /**
+             * Read the page at pageNo, after asking the buffer pool to read
+             * the following pages in the background.
+             */
+            private Iterator<Tuple> pageIterator() throws DbException, TransactionAbortedException {
+                BufferPool bufferPool = Database.getBufferPool();
+                int window = bufferPool.getPrefetchPages();
+                if (ring != null){
+                    // prefetched pages must not overwrite each other in the ring
+                    window = Math.min(window, ring.size()-1);
+                }
+                int last = Math.min(pageNo+window, numPages()-1);
+                readAheadTo = Math.max(readAheadTo, pageNo);
+                while (readAheadTo < last){
+                    bufferPool.prefetch(new HeapPageId(tableID, ++readAheadTo), ring);
+                }
+                // the page left behind must not keep a frame the next one may need
+                unpin();
+                HeapPage page = (HeapPage) bufferPool.getPinnedPage(tid,currPageID,Permissions.READ_ONLY,ring);
+                pinnedPageID = currPageID;
+                return view == null ? page.iterator() : page.iterator(view);
+            }
 
+            private void unpin() {
+                if (pinnedPageID != null){
+                    Database.getBufferPool().unpinPage(tid, pinnedPageID);
+                    pinnedPageID = null;
+                }
             }
 
             @Override
@@ -216,7 +362,7 @@ public class HeapFile implements DbFile {
                 }else{
                     while (pageNo+1<numPages()){
                         currPageID = new HeapPageId(tableID,++pageNo);
-                        tupleIterator = ((HeapPage)Database.getBufferPool().getPage(tid,currPageID,Permissions.READ_ONLY)).iterator();
+                        tupleIterator = pageIterator();
                         if (tupleIterator.hasNext()){
                             return true;
                         }
@@ -232,7 +378,7 @@ public class HeapFile implements DbFile {
                 }catch (NoSuchElementException e){
                     if (pageNo+1<numPages()){
                         currPageID = new HeapPageId(tableID,++pageNo);
-                        tupleIterator = ((HeapPage)Database.getBufferPool().getPage(tid,currPageID,Permissions.READ_ONLY)).iterator();
+                        tupleIterator = pageIterator();
                         return tupleIterator.next();
                     }else {
                         throw new NoSuchElementException();
@@ -249,8 +395,10 @@ public class HeapFile implements DbFile {
 
             @Override
             public void close() {
+                unpin();
                 currPageID = null;
                 tupleIterator = null;
+                ring = null;
                 pageNo = -1;
             }
         };
@@ -4,8 +4,10 @@ import simpledb.common.Type;
 import simpledb.common.Utility;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * HeapFileEncoder reads a comma delimited text file or accepts
@@ -116,6 +118,8 @@ public class HeapFileEncoder {
     int recordcount = 0;
     int npages = 0;
     int fieldNo = 0;
+    // free bytes of each page written, for the free-space map
+    List<Integer> pagesFree = new ArrayList<>();
 
     ByteArrayOutputStream headerBAOS = new ByteArrayOutputStream(nheaderbytes);
     DataOutputStream headerStream = new DataOutputStream(headerBAOS);
@@ -217,11 +221,112 @@ public class HeapFileEncoder {
             pageBAOS = new ByteArrayOutputStream(npagebytes);
             pageStream = new DataOutputStream(pageBAOS);
             
+            pagesFree.add((nrecords - recordcount) * nrecbytes);
             recordcount = 0;
             npages++;
         }
     }
     br.close();
     os.close();
+    FreeSpaceMap.write(outFile, pagesFree.stream().mapToInt(Integer::intValue).toArray());
+  }
+
+  /** Convert the specified input text file, in the format read by
+   * {@link #convert(File, File, int, int, Type[], char)}, into a page file
+   * of {@link SlottedHeapPage}s, to be read as a {@link SlottedHeapFile}.
+   * Strings take only as many bytes as they have (up to Type.STRING_LEN),
+   * so a page holds as many rows as fit.
+   *
+   * @param inFile The input file to read data from
+   * @param outFile The output file to write data to
+   * @param npagebytes The number of bytes per page in the output file
+   * @param typeAr the types of the fields in each input line/output tuple
+   * @param fieldSeparator the character between fields of a line
+   * @throws IOException if the input/output file can't be opened, or a row
+   *   does not fit on an empty page
+   */
+  public static void convertSlotted(File inFile, File outFile, int npagebytes,
+                 Type[] typeAr, char fieldSeparator)
+      throws IOException {
+      TupleDesc td = new TupleDesc(typeAr);
+      List<Tuple> page = new ArrayList<>();
+      int used = SlottedHeapPage.HEADER_SIZE;
+      int npages = 0;
+      List<Integer> pagesFree = new ArrayList<>();
+
+      try (BufferedReader br = new BufferedReader(new FileReader(inFile));
+           FileOutputStream os = new FileOutputStream(outFile)) {
+          String line;
+          while ((line = br.readLine()) != null) {
+              if (line.trim().isEmpty())
+                  continue;
+              String[] fields = line.split(Pattern.quote(String.valueOf(fieldSeparator)), -1);
+              if (fields.length != typeAr.length) {
+                  System.out.println ("BAD LINE : " + line);
+                  continue;
+              }
+              Tuple t = new Tuple(td);
+              try {
+                  for (int i = 0; i < typeAr.length; i++) {
+                      if (typeAr[i] == Type.INT_TYPE)
+                          t.setField(i, new IntField(Integer.parseInt(fields[i].trim())));
+                      else
+                          t.setField(i, new StringField(fields[i].trim(), Type.STRING_LEN));
+                  }
+              } catch (NumberFormatException e) {
+                  System.out.println ("BAD LINE : " + line);
+                  continue;
+              }
+
+              int need = SlottedHeapPage.recordSize(td, t) + SlottedHeapPage.SLOT_SIZE;
+              if (used + need > npagebytes && !page.isEmpty()) {
+                  os.write(SlottedHeapPage.pack(td, page, npagebytes));
+                  pagesFree.add(npagebytes - used);
+                  npages++;
+                  page.clear();
+                  used = SlottedHeapPage.HEADER_SIZE;
+              }
+              if (used + need > npagebytes)
+                  throw new IOException("row does not fit on a page: " + line);
+              page.add(t);
+              used += need;
+          }
+          // as convert does, an empty table still gets one (empty) page
+          if (!page.isEmpty() || npages == 0) {
+              os.write(SlottedHeapPage.pack(td, page, npagebytes));
+              pagesFree.add(npagebytes - used);
+          }
+      }
+      FreeSpaceMap.write(outFile, pagesFree.stream().mapToInt(Integer::intValue).toArray());
+  }
+
+  /** Convert the specified input text file, in the format read by
+   * {@link #convert(File, File, int, int, Type[], char)}, into a page file
+   * of {@link PaxHeapPage}s, to be read as a {@link PaxHeapFile}. The pages
+   * hold the same rows as convert would put on them.
+   *
+   * @param inFile The input file to read data from
+   * @param outFile The output file to write data to
+   * @param npagebytes The number of bytes per page in the output file
+   * @param typeAr the types of the fields in each input line/output tuple
+   * @param fieldSeparator the character between fields of a line
+   * @throws IOException if the input/output file can't be opened or a
+   *   malformed input line is encountered
+   */
+  public static void convertPax(File inFile, File outFile, int npagebytes,
+                 Type[] typeAr, char fieldSeparator)
+      throws IOException {
+      // write the rows as convert does (which also writes the free-space map), then rearrange each page
+      convert(inFile, outFile, npagebytes, typeAr.length, typeAr, fieldSeparator);
+      TupleDesc td = new TupleDesc(typeAr);
+      byte[] page = new byte[npagebytes];
+      try (RandomAccessFile raf = new RandomAccessFile(outFile, "rw")) {
+          for (long offset = 0; offset < raf.length(); offset += npagebytes) {
+              raf.seek(offset);
+              raf.readFully(page);
+              raf.seek(offset);
+              raf.write(PaxHeapPage.fromRows(page, td, npagebytes));
+          }
+      }
   }
 }
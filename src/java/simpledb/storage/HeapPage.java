@@ -3,11 +3,14 @@ package simpledb.storage;
 import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Debug;
+import simpledb.common.Type;
 import simpledb.common.Catalog;
 import simpledb.transaction.TransactionId;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
@@ -20,13 +23,23 @@ import java.io.*;
 public class HeapPage implements Page {
 
     private final HeapPageId pid;
-    private final TupleDesc td;
+    final TupleDesc td;
     private final byte[] header;
-    private final Tuple[] tuples;
+    /** Slots not parsed yet, or empty, are null; see {@link #tupleAt}. */
+    private final AtomicReferenceArray<Tuple> tuples;
     private final int numSlots;
+    /** Field j of slot i is at fieldBase[j] + i*fieldStride[j]; see {@link #isColumnar}. */
+    private final int[] fieldBase;
+    private final int[] fieldStride;
+    /** The bytes the page was read from, which unparsed slots are read from; never changed. */
+    private final byte[] raw;
+    /** raw, for parsing fields with absolute gets. */
+    private final ByteBuffer rawBuffer;
 
     private byte[] oldData;
-    private final Byte oldDataLock= (byte) 0;
+    private final Object oldDataLock = new Object();
+    /** For pages built over a mapping: the on-disk bytes, copied to oldData only when needed. */
+    private ByteBuffer oldDataSource;
 
     private boolean dirty =false;
     private TransactionId lastTransId;
@@ -43,6 +56,11 @@ public class HeapPage implements Page {
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * <p>
+     * Only the header is read here. A tuple is parsed from data when it is
+     * first asked for, so data is kept, and must not be changed afterwards;
+     * it also serves as the before image.
+     *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#getPageSize()
@@ -51,26 +69,85 @@ public class HeapPage implements Page {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        // the padding after the last slot may be left out
+        if (data.length < getHeaderSize() + numSlots*td.getSize()) {
+            throw new IOException("page data is too short: " + data.length + " bytes");
+        }
 
         // allocate and read the header slots of this page
+        header = Arrays.copyOf(data, getHeaderSize());
+        fieldBase = new int[td.numFields()];
+        fieldStride = new int[td.numFields()];
+        layOut();
+        tuples = new AtomicReferenceArray<>(numSlots);
+        raw = data;
+        rawBuffer = ByteBuffer.wrap(data);
+        // not shared yet, so no lock
+        oldData = data;
+    }
+
+    /**
+     * Create a HeapPage straight from a page-sized buffer, such as a slice of
+     * a memory-mapped file, without first copying it into a byte array. The
+     * layout is the same as for {@link #HeapPage(HeapPageId, byte[])}; fields
+     * are read with absolute gets and the buffer's position is not used.
+     * <p>
+     * The buffer is kept as the source of the before image, which is only
+     * copied out when {@link #getBeforeImage} or {@link #captureBeforeImage}
+     * is called. Whoever owns the buffer must call captureBeforeImage before
+     * changing its contents.
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.numSlots = getNumTuples();
+
         header = new byte[getHeaderSize()];
         for (int i=0; i<header.length; i++) {
-            header[i] = dis.readByte();
+            header[i] = data.get(i);
         }
-        
-        tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++) {
-                tuples[i] = readNextTuple(dis,i);
+        fieldBase = new int[td.numFields()];
+        fieldStride = new int[td.numFields()];
+        layOut();
+
+        // parsed now: the mapping changes when the page is written back
+        tuples = new AtomicReferenceArray<>(numSlots);
+        raw = null;
+        rawBuffer = null;
+        for (int i=0; i<numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                continue;
             }
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
+            Tuple t = new Tuple(td);
+            t.setRecordId(new RecordId(pid, i));
+            try {
+                for (int j=0; j<td.numFields(); j++) {
+                    t.setField(j, td.getFieldType(j).parse(data, fieldOffset(i, j)));
+                }
+            } catch (java.text.ParseException e) {
+                throw new IOException("parsing error in slot " + i, e);
+            }
+            tuples.set(i, t);
         }
-        dis.close();
 
-        setBeforeImage();
+        // not shared yet, so no lock
+        oldDataSource = data;
+    }
+
+    /**
+     * For subclasses with another page layout, which keep their own tuples
+     * and override the methods that read, change or serialize them.
+     */
+    protected HeapPage(HeapPageId id) {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.numSlots = 0;
+        this.header = new byte[0];
+        this.fieldBase = new int[0];
+        this.fieldStride = new int[0];
+        this.tuples = new AtomicReferenceArray<>(0);
+        this.raw = null;
+        this.rawBuffer = null;
     }
 
     /** Retrieve the number of tuples on this page.
@@ -102,9 +179,10 @@ public class HeapPage implements Page {
             byte[] oldDataRef = null;
             synchronized(oldDataLock)
             {
+                captureBeforeImage();
                 oldDataRef = oldData;
             }
-            return new HeapPage(pid,oldDataRef);
+            return createPage(oldDataRef);
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -112,12 +190,33 @@ public class HeapPage implements Page {
         }
         return null;
     }
+
+    /** Parse data, in this page's layout, as a page with this page's id. */
+    protected HeapPage createPage(byte[] data) throws IOException {
+        return new HeapPage(pid, data);
+    }
+
+    /**
+     * If this page was built over a buffer, copy the buffer's bytes out as
+     * the before image now, before the buffer changes.
+     */
+    void captureBeforeImage() {
+        synchronized(oldDataLock)
+        {
+            if (oldDataSource != null) {
+                oldData = new byte[BufferPool.getPageSize()];
+                oldDataSource.duplicate().get(oldData);
+                oldDataSource = null;
+            }
+        }
+    }
     
     @Override
     public void setBeforeImage() {
         synchronized(oldDataLock)
         {
         oldData = getPageData().clone();
+        oldDataSource = null;
         }
     }
 
@@ -132,36 +231,58 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * Whether the page stores each field's values together, one column
+     * after another, instead of one record after another. The header is
+     * the same either way.
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
+    boolean isColumnar() {
+        return false;
+    }
+
+    private void layOut() {
+        int fieldOffset = 0;
+        for (int j=0; j<fieldBase.length; j++) {
+            int len = td.getFieldType(j).getLen();
+            if (isColumnar()) {
+                fieldBase[j] = header.length + numSlots*fieldOffset;
+                fieldStride[j] = len;
+            }else {
+                fieldBase[j] = header.length + fieldOffset;
+                fieldStride[j] = td.getSize();
             }
-            return null;
+            fieldOffset += len;
         }
+    }
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
+    /** Offset of field j of slot i in the page. */
+    private int fieldOffset(int i, int j) {
+        return fieldBase[j] + i*fieldStride[j];
+    }
+
+    /**
+     * Return the tuple in used slot i, parsing it from the page's bytes the
+     * first time. Readers sharing the page may parse a slot at once; the
+     * first tuple stored wins, so all get the same one.
+     */
+    private Tuple tupleAt(int i) throws NoSuchElementException {
+        Tuple t = tuples.get(i);
+        if (t != null || raw == null) {
+            return t;
+        }
+        Field[] fields = new Field[td.numFields()];
         try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
+            for (int j=0; j<fields.length; j++) {
+                fields[j] = td.getFieldType(j).parse(rawBuffer, fieldOffset(i, j));
             }
         } catch (java.text.ParseException e) {
             e.printStackTrace();
             throw new NoSuchElementException("parsing error!");
         }
-
+        t = new Tuple(td, fields);
+        t.setRecordId(new RecordId(pid, i));
+        if (!tuples.compareAndSet(i, null, t)) {
+            t = tuples.get(i);
+        }
         return t;
     }
 
@@ -178,64 +299,35 @@ public class HeapPage implements Page {
      */
     @Override
     public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (byte b : header) {
-            try {
-                dos.writeByte(b);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
+        byte[] data = new byte[BufferPool.getPageSize()];
+        System.arraycopy(header, 0, data, 0, header.length);
 
-            // empty slot
+        // fields of tuples in use, wherever the layout puts them; the rest stays zero
+        ByteArrayOutputStream field = new ByteArrayOutputStream(Type.STRING_TYPE.getLen());
+        DataOutputStream dos = new DataOutputStream(field);
+        for (int i=0; i<numSlots; i++) {
             if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
                 continue;
             }
-
-            // non-empty slot
+            // a slot not parsed has not changed since it was read
+            Tuple t = tuples.get(i);
             for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
+                int offset = fieldOffset(i, j);
+                if (t == null) {
+                    System.arraycopy(raw, offset, data, offset, td.getFieldType(j).getLen());
+                    continue;
+                }
+                field.reset();
                 try {
-                    f.serialize(dos);
-                
+                    t.getField(j).serialize(dos);
                 } catch (IOException e) {
+                    // this really shouldn't happen
                     e.printStackTrace();
                 }
+                System.arraycopy(field.toByteArray(), 0, data, offset, field.size());
             }
         }
-
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return baos.toByteArray();
+        return data;
     }
 
     /**
@@ -268,6 +360,7 @@ public class HeapPage implements Page {
 
         int tupleNumber = t.getRecordId().getTupleNumber();
         markSlotUsed(tupleNumber, false);
+        tuples.set(tupleNumber, null);
         t.setRecordId(new RecordId(new HeapPageId(-1,-1),-1));
     }
 
@@ -287,7 +380,7 @@ public class HeapPage implements Page {
         for (int i=0;i<numSlots;i++){
             if (!isSlotUsed(i)){
                 markSlotUsed(i,true);
-                tuples[i] = t;
+                tuples.set(i, t);
                 t.setRecordId(new RecordId(pid, i));
                 break;
             }
@@ -334,6 +427,20 @@ public class HeapPage implements Page {
         return num;
     }
 
+    /**
+     * Returns the number of bytes of this page that tuples can still use.
+     */
+    public int getFreeSpace() {
+        return getNumEmptySlots() * td.getSize();
+    }
+
+    /**
+     * Returns true if t can be inserted into this page.
+     */
+    public boolean hasRoomFor(Tuple t) {
+        return getNumEmptySlots() > 0;
+    }
+
     /**
      * Returns true if associated slot on this page is filled.
      */
@@ -381,13 +488,10 @@ public class HeapPage implements Page {
 
             @Override
             public Tuple next() {
-                //if (hasNext()){
-
-                    return tuples[++idx];
-
-                //}else {
-                //    throw new NoSuchElementException();
-                //}
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return tupleAt(++idx);
             }
 
             @Override
@@ -398,5 +502,40 @@ public class HeapPage implements Page {
 
     }
 
+    /**
+     * Like {@link #iterator()}, but a slot not parsed yet is returned as
+     * view, moved onto the slot's bytes, instead of being parsed. Slots
+     * already parsed or inserted into are returned as their tuples.
+     */
+    public Iterator<Tuple> iterator(TupleView view) {
+        if (raw == null) {
+            return iterator();
+        }
+        return new Iterator<Tuple>() {
+            private int idx = -1;
+
+            @Override
+            public boolean hasNext() {
+                while (idx+1<numSlots&&!isSlotUsed(idx+1)){
+                    idx++;
+                }
+                return idx+1<numSlots;
+            }
+
+            @Override
+            public Tuple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = tuples.get(++idx);
+                if (t != null) {
+                    return t;
+                }
+                view.moveTo(rawBuffer, fieldBase, fieldStride, pid, idx);
+                return view;
+            }
+        };
+    }
+
 }
 
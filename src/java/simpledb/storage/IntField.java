@@ -52,23 +52,28 @@ public class IntField implements Field {
      * @see Field#compare
      */
     public boolean compare(Predicate.Op op, Field val) {
+        return compare(op, value, ((IntField) val).value);
+    }
 
-        IntField iVal = (IntField) val;
-
+    /**
+     * Compare two int values as {@link #compare(Predicate.Op, Field)}
+     * compares IntFields holding them.
+     */
+    public static boolean compare(Predicate.Op op, int value, int operand) {
         switch (op) {
             case EQUALS:
             case LIKE:
-                return value == iVal.value;
+                return value == operand;
             case NOT_EQUALS:
-                return value != iVal.value;
+                return value != operand;
             case GREATER_THAN:
-                return value > iVal.value;
+                return value > operand;
             case GREATER_THAN_OR_EQ:
-                return value >= iVal.value;
+                return value >= operand;
             case LESS_THAN:
-                return value < iVal.value;
+                return value < operand;
             case LESS_THAN_OR_EQ:
-                return value <= iVal.value;
+                return value <= operand;
         }
 
         return false;
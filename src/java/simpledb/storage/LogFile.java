@@ -8,6 +8,7 @@ import simpledb.common.Debug;
 import java.io.*;
 import java.util.*;
 import java.lang.reflect.*;
+import java.util.concurrent.locks.LockSupport;
 
 /*
 LogFile implements the recovery subsystem of SimpleDb.  This class is
@@ -95,6 +96,14 @@ public class LogFile {
 
     final Map<Long,Long> tidToFirstLogRecord = new HashMap<>();
 
+    // group commit; all protected by this
+    long appendedRecords = 0; // records appended so far
+    long forcedRecords = 0; // records known to be on disk
+    boolean forcing = false; // a group leader is forcing the log
+    long forceCount = 0; // number of log forces, for benchmarks
+    /** How long a group commit leader waits for more commits to join before forcing. */
+    volatile long groupCommitWindowMicros = 0;
+
     /** Constructor.
         Initialize and back the log file with the specified file.
         We're not sure yet whether the caller is creating a brand new DB,
@@ -127,6 +136,7 @@ public class LogFile {
     // the log.
     void preAppend() throws IOException {
         totalRecords++;
+        appendedRecords++;
         if(recoveryUndecided){
             recoveryUndecided = false;
             raf.seek(0);
@@ -175,17 +185,19 @@ public class LogFile {
 
         @param tid The committing transaction.
     */
-    public synchronized void logCommit(TransactionId tid) throws IOException {
-        preAppend();
-        Debug.log("COMMIT " + tid.getId());
-        //should we verify that this is a live transaction?
-
-        raf.writeInt(COMMIT_RECORD);
-        raf.writeLong(tid.getId());
-        raf.writeLong(currentOffset);
-        currentOffset = raf.getFilePointer();
-        force();
-        tidToFirstLogRecord.remove(tid.getId());
+    public void logCommit(TransactionId tid) throws IOException {
+        synchronized (this) {
+            preAppend();
+            Debug.log("COMMIT " + tid.getId());
+            //should we verify that this is a live transaction?
+
+            raf.writeInt(COMMIT_RECORD);
+            raf.writeLong(tid.getId());
+            raf.writeLong(currentOffset);
+            currentOffset = raf.getFilePointer();
+            tidToFirstLogRecord.remove(tid.getId());
+        }
+        groupForce();
     }
 
     /** Write an UPDATE record to disk for the specified tid and page
@@ -267,17 +279,16 @@ public class LogFile {
             }
             pid = (PageId)idConsts[0].newInstance(idArgs);
 
-            Constructor<?>[] pageConsts = pageClass.getDeclaredConstructors();
             int pageSize = raf.readInt();
 
             byte[] pageData = new byte[pageSize];
-            raf.read(pageData); //read before image
+            raf.readFully(pageData); //read before image
 
             Object[] pageArgs = new Object[2];
             pageArgs[0] = pid;
             pageArgs[1] = pageData;
 
-            newPage = (Page)pageConsts[0].newInstance(pageArgs);
+            newPage = (Page)pageConstructor(pageClass).newInstance(pageArgs);
 
             //            Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
         } catch (ClassNotFoundException | InvocationTargetException | IllegalAccessException | InstantiationException e){
@@ -288,6 +299,21 @@ public class LogFile {
 
     }
 
+    /**
+     * Return the (page id, byte[]) constructor of a page class. Pages may
+     * declare other two-argument constructors (HeapPage takes a mapped
+     * ByteBuffer too), so the first declared one is not necessarily it.
+     */
+    private static Constructor<?> pageConstructor(Class<?> pageClass) throws IOException {
+        for (Constructor<?> c : pageClass.getDeclaredConstructors()) {
+            Class<?>[] params = c.getParameterTypes();
+            if (params.length == 2 && PageId.class.isAssignableFrom(params[0]) && params[1] == byte[].class) {
+                return c;
+            }
+        }
+        throw new IOException("no (PageId, byte[]) constructor in " + pageClass.getName());
+    }
+
     /** Write a BEGIN record for the specified transaction
         @param tid The transaction that is beginning
 
@@ -353,6 +379,14 @@ public class LogFile {
     /** Truncate any unneeded portion of the log to reduce its space
         consumption */
     public synchronized void logTruncate() throws IOException {
+        // a group commit leader may be forcing the file about to be replaced
+        while (forcing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
         preAppend();
         raf.seek(0);
         long cpLoc = raf.readLong();
@@ -487,6 +521,97 @@ public class LogFile {
             synchronized (this) {
                 recoveryUndecided = false;
                 // some code goes here
+                if (raf.length() < LONG_SIZE) {
+                    raf.setLength(0);
+                    raf.writeLong(NO_CHECKPOINT_ID);
+                    currentOffset = raf.getFilePointer();
+                    return;
+                }
+
+                // Pages are written back only at or after commit, and a
+                // checkpoint flushes the pool, so every update not yet known
+                // to be on disk is in the log after the last checkpoint or
+                // belongs to a transaction active at that checkpoint.
+                // Replay them in order: a committed update installs its
+                // after image, an update by a transaction that did not
+                // commit restores the page as it was before that
+                // transaction first touched it.
+                raf.seek(0);
+                long cpLoc = raf.readLong();
+                long start = LONG_SIZE;
+                Set<Long> activeAtCheckpoint = new HashSet<>();
+                if (cpLoc != NO_CHECKPOINT_ID) {
+                    raf.seek(cpLoc);
+                    if (raf.readInt() != CHECKPOINT_RECORD) {
+                        throw new IOException("checkpoint pointer does not point to a checkpoint record");
+                    }
+                    raf.readLong();
+                    start = cpLoc;
+                    int numXactions = raf.readInt();
+                    while (numXactions-- > 0) {
+                        activeAtCheckpoint.add(raf.readLong());
+                        start = Math.min(start, raf.readLong());
+                    }
+                }
+
+                Set<Long> committed = new HashSet<>();
+                List<Long> updateTids = new ArrayList<>();
+                List<Page[]> updates = new ArrayList<>();
+                raf.seek(start);
+                while (true) {
+                    try {
+                        long recordStart = raf.getFilePointer();
+                        int type = raf.readInt();
+                        long recordTid = raf.readLong();
+                        switch (type) {
+                        case UPDATE_RECORD:
+                            Page before = readPageData(raf);
+                            Page after = readPageData(raf);
+                            // before the checkpoint, only the transactions
+                            // still active then have updates not on disk
+                            if (recordStart > cpLoc || activeAtCheckpoint.contains(recordTid)) {
+                                updateTids.add(recordTid);
+                                updates.add(new Page[]{before, after});
+                            }
+                            break;
+                        case COMMIT_RECORD:
+                            committed.add(recordTid);
+                            break;
+                        case CHECKPOINT_RECORD:
+                            int numXactions = raf.readInt();
+                            raf.skipBytes(numXactions * 2 * LONG_SIZE);
+                            break;
+                        }
+                        raf.readLong();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                }
+
+                Map<PageId, Page> install = new LinkedHashMap<>();
+                Map<PageId, Long> undoneBy = new HashMap<>();
+                for (int i = 0; i < updates.size(); i++) {
+                    long recordTid = updateTids.get(i);
+                    Page[] images = updates.get(i);
+                    PageId pid = images[1].getId();
+                    if (committed.contains(recordTid)) {
+                        install.put(pid, images[1]);
+                        undoneBy.remove(pid);
+                    } else if (!Long.valueOf(recordTid).equals(undoneBy.get(pid))) {
+                        install.put(pid, images[0]);
+                        undoneBy.put(pid, recordTid);
+                    }
+                }
+                for (Page p : install.values()) {
+                    DbFile file = Database.getCatalog().getDatabaseFile(p.getId().getTableId());
+                    file.writePage(p);
+                    Database.getBufferPool().discardPage(p.getId());
+                    file.pageRestored(p);
+                }
+
+                tidToFirstLogRecord.clear();
+                raf.seek(raf.length());
+                currentOffset = raf.getFilePointer();
             }
          }
     }
@@ -569,6 +694,76 @@ public class LogFile {
 
     public  synchronized void force() throws IOException {
         raf.getChannel().force(true);
+        forceCount++;
+        forcedRecords = appendedRecords;
+    }
+
+    /**
+     * Force every record appended so far to disk, sharing the force with
+     * concurrent callers (group commit). The first caller becomes the leader:
+     * it waits the group commit window for others to append, then forces
+     * everything appended by then, outside the monitor so that the next
+     * group can append meanwhile. Callers whose records are covered by a
+     * force in progress wait for it instead of forcing again.
+     */
+    public void groupForce() throws IOException {
+        long upTo;
+        synchronized (this) {
+            upTo = appendedRecords;
+            while (forcing && forcedRecords < upTo) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            if (forcedRecords >= upTo) {
+                return;
+            }
+            forcing = true;
+        }
+        boolean done = false;
+        try {
+            long window = groupCommitWindowMicros;
+            if (window > 0) {
+                LockSupport.parkNanos(window * 1000);
+            }
+            java.nio.channels.FileChannel channel;
+            synchronized (this) {
+                upTo = appendedRecords;
+                channel = raf.getChannel();
+            }
+            channel.force(true);
+            done = true;
+        } finally {
+            synchronized (this) {
+                forcing = false;
+                if (done) {
+                    forceCount++;
+                    forcedRecords = Math.max(forcedRecords, upTo);
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /** Return how long a group commit leader waits for more commits, in microseconds. */
+    public long getGroupCommitWindow() {
+        return groupCommitWindowMicros;
+    }
+
+    /**
+     * Set how long a group commit leader waits for more commits to join its
+     * force, in microseconds. 0 (the default) forces at once; commits that
+     * arrive during a force still share the next one.
+     */
+    public void setGroupCommitWindow(long micros) {
+        groupCommitWindowMicros = Math.max(0, micros);
+    }
+
+    /** Return the number of times the log was forced to disk. */
+    public synchronized long getForceCount() {
+        return forceCount;
     }
 
 }
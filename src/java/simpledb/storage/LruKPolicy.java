@@ -0,0 +1,108 @@
+package simpledb.storage;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.IntPredicate;
+
+/**
+ * LRU-K replacement (O'Neil, O'Neil and Weikum). The victim is the frame
+ * whose K-th most recent reference is the oldest; frames referenced fewer
+ * than K times are evicted first, least recently used among them. A page
+ * touched once by a sequential scan therefore never pushes out a page that
+ * has been referenced K times.
+ * <p>
+ * The reference history of evicted pages is retained for as many pages as
+ * there are frames, so a page that comes back soon after eviction keeps
+ * its earlier references.
+ * <p>
+ * Occupied frames are kept ordered by K-th and then most recent reference
+ * time, so a victim is found in O(log n) unless the oldest frames are not
+ * evictable.
+ */
+public class LruKPolicy implements ReplacementPolicy {
+    /** Default K; LRU-2 already gives most of the benefit. */
+    public static final int DEFAULT_K = 2;
+
+    private final int k;
+    /** history[frame][0] is the most recent reference time, 0 means none. */
+    private final long[][] history;
+    private final PageId[] pages;
+    private final Map<PageId, long[]> retained;
+    /** Occupied frames, the one with the largest backward K-distance first. */
+    private final TreeSet<Integer> byAge;
+    private long now = 0;
+
+    public LruKPolicy(int numFrames) {
+        this(numFrames, DEFAULT_K);
+    }
+
+    public LruKPolicy(int numFrames, int k) {
+        if (k < 1){
+            throw new IllegalArgumentException("K must be at least 1");
+        }
+        this.k = k;
+        history = new long[numFrames][];
+        pages = new PageId[numFrames];
+        // reference times are unique, so no two occupied frames compare equal
+        byAge = new TreeSet<>(Comparator.<Integer>comparingLong(f -> history[f][this.k-1])
+                .thenComparingLong(f -> history[f][0]));
+        retained = new LinkedHashMap<PageId, long[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PageId, long[]> eldest) {
+                return size() > pages.length;
+            }
+        };
+    }
+
+    @Override
+    public void admit(int frame, PageId pid) {
+        long[] h = retained.remove(pid);
+        history[frame] = h != null ? h : new long[k];
+        pages[frame] = pid;
+        reference(frame);
+        byAge.add(frame);
+    }
+
+    @Override
+    public void touch(int frame) {
+        // re-insert, since the frame's key changes
+        byAge.remove(frame);
+        reference(frame);
+        byAge.add(frame);
+    }
+
+    private void reference(int frame) {
+        long[] h = history[frame];
+        System.arraycopy(h, 0, h, 1, k-1);
+        h[0] = ++now;
+    }
+
+    @Override
+    public void remove(int frame) {
+        if (pages[frame] != null){
+            byAge.remove(frame);
+            retained.put(pages[frame], history[frame]);
+        }
+        pages[frame] = null;
+        history[frame] = null;
+    }
+
+    /**
+     * The oldest evictable frame: the one whose K-th most recent reference
+     * is the oldest, and among frames referenced fewer than K times the
+     * least recently used.
+     */
+    @Override
+    public int victim(IntPredicate evictable) {
+        for (int frame : byAge){
+            if (evictable.test(frame)){
+                return frame;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,110 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * A HeapFile for read-mostly tables (e.g. loaded once with HeapFileEncoder
+ * and then only queried) that reads pages through memory-mapped segments of
+ * the file instead of read calls. readPage builds the HeapPage straight from
+ * a slice of the mapping, so page bytes are never copied into a fresh array;
+ * the before image is only copied out if the page is written back.
+ * <p>
+ * The file is mapped read-only in segments of {@link #SEGMENT_SIZE} bytes.
+ * Writes still go through the file channel, which on the platforms we run on
+ * shares the OS page cache with the mapping. When a page past the mapped
+ * length is requested (the file grew), the mapping is extended.
+ *
+ * @see Catalog#loadSchema
+ */
+public class MappedHeapFile extends HeapFile {
+    /** Bytes per mapped segment; a multiple of any page size we use. */
+    public static final int SEGMENT_SIZE = 64 << 20;
+
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    /** Bytes of the file covered by segments. */
+    private volatile long mappedLength = 0;
+
+    public MappedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    @Override
+    public Page readPage(PageId pid) {
+        int pageSize = BufferPool.getPageSize();
+        long offset = (long) pid.getPageNumber()*pageSize;
+        try {
+            if (offset + pageSize > mappedLength){
+                remap();
+            }
+            if (offset + pageSize > mappedLength || SEGMENT_SIZE % pageSize != 0){
+                // past the end of the file (or an odd test page size): plain read
+                return super.readPage(pid);
+            }
+            ByteBuffer segment = segments[(int) (offset / SEGMENT_SIZE)].duplicate();
+            int start = (int) (offset % SEGMENT_SIZE);
+            segment.position(start);
+            segment.limit(start + pageSize);
+            return new HeapPage((HeapPageId) pid, segment.slice());
+        }catch (IOException e){
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public void writePage(Page page) throws IOException {
+        // the page may still use the mapped bytes as its before image
+        if (page instanceof HeapPage){
+            ((HeapPage) page).captureBeforeImage();
+        }
+        super.writePage(page);
+    }
+
+    @Override
+    public void writePages(List<Page> pages) throws IOException {
+        for (Page page : pages){
+            if (page instanceof HeapPage){
+                ((HeapPage) page).captureBeforeImage();
+            }
+        }
+        super.writePages(pages);
+    }
+
+    /**
+     * Map any part of the file not covered yet. The last segment is remapped
+     * if it was partial; full segments are kept.
+     */
+    private synchronized void remap() throws IOException {
+        long length = getFile().length();
+        if (length <= mappedLength){
+            return;
+        }
+        int count = (int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        MappedByteBuffer[] grown = new MappedByteBuffer[count];
+        int full = (int) (mappedLength / SEGMENT_SIZE);
+        System.arraycopy(segments, 0, grown, 0, Math.min(full, segments.length));
+        try (RandomAccessFile raf = new RandomAccessFile(getFile(), "r");
+             FileChannel fc = raf.getChannel()) {
+            for (int i = full; i < count; i++){
+                long start = (long) i * SEGMENT_SIZE;
+                grown[i] = fc.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+            }
+        }
+        segments = grown;
+        mappedLength = length;
+    }
+
+    /** Drop the mapping; it is rebuilt on the next read. */
+    @Override
+    public synchronized void close() throws IOException {
+        segments = new MappedByteBuffer[0];
+        mappedLength = 0;
+        super.close();
+    }
+}
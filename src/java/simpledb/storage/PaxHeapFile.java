@@ -0,0 +1,29 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A HeapFile whose pages are {@link PaxHeapPage}s, storing each field's
+ * values together within a page, for tables scanned for a few of many
+ * columns. Such a file is written by {@link HeapFileEncoder#convertPax}
+ * and loaded by marking the table <code>pax</code> in the catalog.
+ * <p>
+ * Only a scan through views reads just the columns its operators use; a
+ * scan returning Tuples parses every column of a row. Planned queries and
+ * TableStats scan through views, a bare SeqScan only when asked to.
+ *
+ * @see Catalog#loadSchema
+ * @see simpledb.execution.SeqScan#setTupleViews
+ */
+public class PaxHeapFile extends HeapFile {
+
+    public PaxHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    @Override
+    protected HeapPage createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new PaxHeapPage(pid, data);
+    }
+}
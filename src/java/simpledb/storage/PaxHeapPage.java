@@ -0,0 +1,59 @@
+package simpledb.storage;
+
+import java.io.IOException;
+
+/**
+ * A HeapPage that groups the values of each field together (PAX): after
+ * the header, the page holds a minipage per field with that field's value
+ * for every slot, in slot order, instead of one record after another. The
+ * header, the number of slots and the space a page takes are those of a
+ * HeapPage, and so is a page of zeroes.
+ * <p>
+ * A scan that returns rows as {@link TupleView}s reads only the fields
+ * the operators above it ask for, so only those minipages, each packed
+ * with the values of consecutive slots.
+ *
+ * @see PaxHeapFile
+ */
+public class PaxHeapPage extends HeapPage {
+
+    /**
+     * Create a PaxHeapPage from a set of bytes of data read from disk, in
+     * the layout described above.
+     */
+    public PaxHeapPage(HeapPageId id, byte[] data) throws IOException {
+        super(id, data);
+    }
+
+    @Override
+    boolean isColumnar() {
+        return true;
+    }
+
+    @Override
+    protected HeapPage createPage(byte[] data) throws IOException {
+        return new PaxHeapPage(getId(), data);
+    }
+
+    /**
+     * Rearrange a page of pageSize bytes in HeapPage layout into this
+     * layout. Used by {@link HeapFileEncoder} to write pages of tables that
+     * are not in the catalog yet.
+     */
+    static byte[] fromRows(byte[] rows, TupleDesc td, int pageSize) {
+        int numSlots = (pageSize*8) / (td.getSize()*8 + 1);
+        int headerSize = (numSlots + 7) / 8;
+        byte[] data = new byte[pageSize];
+        System.arraycopy(rows, 0, data, 0, headerSize);
+        int fieldOffset = 0;
+        for (int j=0; j<td.numFields(); j++) {
+            int len = td.getFieldType(j).getLen();
+            int base = headerSize + numSlots*fieldOffset;
+            for (int i=0; i<numSlots; i++) {
+                System.arraycopy(rows, headerSize + i*td.getSize() + fieldOffset, data, base + i*len, len);
+            }
+            fieldOffset += len;
+        }
+        return data;
+    }
+}
@@ -0,0 +1,40 @@
+package simpledb.storage;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Chooses which frame of a buffer pool partition to evict. A policy only
+ * sees frame indexes (and the PageId loaded into a frame); the partition
+ * owning it calls every method while holding its latch, so implementations
+ * need no synchronization of their own.
+ *
+ * @see BufferPool
+ * @see ClockPolicy
+ * @see LruKPolicy
+ * @see TwoQueuePolicy
+ */
+public interface ReplacementPolicy {
+
+    /**
+     * Called after the page pid has been read into an empty frame.
+     */
+    void admit(int frame, PageId pid);
+
+    /**
+     * Called when a request is answered by the page already in frame.
+     */
+    void touch(int frame);
+
+    /**
+     * Called after the page in frame has been evicted or discarded; the
+     * frame is empty afterwards.
+     */
+    void remove(int frame);
+
+    /**
+     * Pick a frame to evict among the occupied frames accepted by evictable.
+     *
+     * @return the frame to evict, or -1 if no occupied frame is evictable
+     */
+    int victim(IntPredicate evictable);
+}
@@ -0,0 +1,30 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A HeapFile whose pages are {@link SlottedHeapPage}s, storing each tuple
+ * in only as many bytes as its strings need. Such a file is written by
+ * {@link HeapFileEncoder#convertSlotted} and loaded by marking the table
+ * <code>slotted</code> in the catalog.
+ *
+ * @see Catalog#loadSchema
+ */
+public class SlottedHeapFile extends HeapFile {
+
+    public SlottedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    @Override
+    protected HeapPage createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new SlottedHeapPage(pid, data);
+    }
+
+    /** A new slot for t never takes more than this. */
+    @Override
+    protected int spaceNeeded(Tuple t) {
+        return SlottedHeapPage.recordSize(td, t) + SlottedHeapPage.SLOT_SIZE;
+    }
+}
@@ -0,0 +1,254 @@
+package simpledb.storage;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A HeapPage laid out as a slot directory and variable-length records, for
+ * tables whose rows are much shorter than their fixed size: a HeapPage
+ * gives every string field {@link Type#STRING_LEN} bytes, whatever its
+ * length.
+ * <p>
+ * The page starts with the number of slots and the offset of the first
+ * record, as unsigned shorts, followed by an (offset, length) pair of
+ * unsigned shorts per slot. Records are packed at the end of the page. A
+ * free slot has offset 0. A record stores an int field in 4 bytes and a
+ * string field as its length (a short) followed by its bytes. A page of
+ * zeroes is an empty page, so {@link #createEmptyPageData} works for both
+ * layouts.
+ * <p>
+ * Slots never move, so a tuple keeps its RecordId until it is deleted.
+ * Records are always written packed, so the space of a deleted record is
+ * reclaimed when the page is next written.
+ *
+ * @see SlottedHeapFile
+ */
+public class SlottedHeapPage extends HeapPage {
+    static final int HEADER_SIZE = 4;
+    static final int SLOT_SIZE = 4;
+
+    /** The tuple in each slot, null for a free slot. */
+    private final List<Tuple> slots = new ArrayList<>();
+    /** Bytes taken by the header, the slot directory and the records. */
+    private int used;
+
+    /**
+     * Create a SlottedHeapPage from a set of bytes of data read from disk,
+     * in the layout described above.
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) throws IOException {
+        super(id);
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        int numSlots = buf.getShort(0) & 0xffff;
+        used = HEADER_SIZE;
+        for (int i=0; i<numSlots; i++) {
+            int offset = buf.getShort(HEADER_SIZE + i*SLOT_SIZE) & 0xffff;
+            Tuple t = null;
+            if (offset != 0) {
+                t = readRecord(buf, offset, td);
+                t.setRecordId(new RecordId(id, i));
+                used += recordSize(td, t);
+            }
+            slots.add(t);
+            used += SLOT_SIZE;
+        }
+
+        setBeforeImage();
+    }
+
+    @Override
+    protected HeapPage createPage(byte[] data) throws IOException {
+        return new SlottedHeapPage(getId(), data);
+    }
+
+    /** The number of bytes t takes as a record. */
+    static int recordSize(TupleDesc td, Tuple t) {
+        int size = 0;
+        for (int j=0; j<td.numFields(); j++) {
+            if (td.getFieldType(j) == Type.STRING_TYPE) {
+                size += 2 + stringBytes((StringField) t.getField(j));
+            }else {
+                size += td.getFieldType(j).getLen();
+            }
+        }
+        return size;
+    }
+
+    /** The number of bytes the longest record of td takes. */
+    static int maxRecordSize(TupleDesc td) {
+        int size = 0;
+        for (int j=0; j<td.numFields(); j++) {
+            size += td.getFieldType(j) == Type.STRING_TYPE ? 2 + Type.STRING_LEN : td.getFieldType(j).getLen();
+        }
+        return size;
+    }
+
+    private static int stringBytes(StringField f) {
+        return Math.min(f.getValue().length(), Type.STRING_LEN);
+    }
+
+    private static Tuple readRecord(ByteBuffer buf, int offset, TupleDesc td) throws IOException {
+        Tuple t = new Tuple(td);
+        try {
+            for (int j=0; j<td.numFields(); j++) {
+                if (td.getFieldType(j) == Type.STRING_TYPE) {
+                    int len = buf.getShort(offset) & 0xffff;
+                    if (len > Type.STRING_LEN) {
+                        throw new IOException("bad string length " + len + " at offset " + offset);
+                    }
+                    byte[] bs = new byte[len];
+                    ByteBuffer dup = buf.duplicate();
+                    dup.position(offset + 2);
+                    dup.get(bs);
+                    t.setField(j, new StringField(new String(bs), Type.STRING_LEN));
+                    offset += 2 + len;
+                }else {
+                    t.setField(j, td.getFieldType(j).parse(buf, offset));
+                    offset += td.getFieldType(j).getLen();
+                }
+            }
+        } catch (java.text.ParseException | IndexOutOfBoundsException e) {
+            throw new IOException("parsing error at offset " + offset, e);
+        }
+        return t;
+    }
+
+    private static void writeRecord(ByteBuffer buf, int offset, TupleDesc td, Tuple t) {
+        for (int j=0; j<td.numFields(); j++) {
+            Field f = t.getField(j);
+            if (td.getFieldType(j) == Type.STRING_TYPE) {
+                String s = ((StringField) f).getValue();
+                int len = stringBytes((StringField) f);
+                buf.putShort(offset, (short) len);
+                for (int k=0; k<len; k++) {
+                    // one byte per char, as StringField.serialize writes them
+                    buf.put(offset + 2 + k, (byte) s.charAt(k));
+                }
+                offset += 2 + len;
+            }else {
+                buf.putInt(offset, ((IntField) f).getValue());
+                offset += 4;
+            }
+        }
+    }
+
+    /**
+     * Lay out the given slots (null for a free slot) as a page of pageSize
+     * bytes. Also used by {@link HeapFileEncoder} to write pages of tables
+     * that are not in the catalog yet.
+     */
+    static byte[] pack(TupleDesc td, List<Tuple> slots, int pageSize) {
+        ByteBuffer buf = ByteBuffer.allocate(pageSize);
+        int end = pageSize;
+        buf.putShort(0, (short) slots.size());
+        for (int i=0; i<slots.size(); i++) {
+            Tuple t = slots.get(i);
+            if (t == null) {
+                continue;
+            }
+            int len = recordSize(td, t);
+            end -= len;
+            writeRecord(buf, end, td, t);
+            buf.putShort(HEADER_SIZE + i*SLOT_SIZE, (short) end);
+            buf.putShort(HEADER_SIZE + i*SLOT_SIZE + 2, (short) len);
+        }
+        buf.putShort(2, (short) end);
+        return buf.array();
+    }
+
+    /** Bytes t takes on a page: its record, plus a new slot if no slot is free. */
+    private int spaceFor(Tuple t) {
+        return recordSize(td, t) + (slots.contains(null) ? 0 : SLOT_SIZE);
+    }
+
+    @Override
+    public byte[] getPageData() {
+        return pack(td, slots, BufferPool.getPageSize());
+    }
+
+    @Override
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !getId().equals(rid.getPageId())) {
+            throw new DbException("The tuple to delete is not in this page");
+        }
+        int slot = rid.getTupleNumber();
+        if (!isSlotUsed(slot)) {
+            throw new DbException("Slot " + slot + " is already empty");
+        }
+        used -= recordSize(td, slots.get(slot));
+        slots.set(slot, null);
+        // free slots at the end of the directory are given back
+        while (!slots.isEmpty() && slots.get(slots.size()-1) == null) {
+            slots.remove(slots.size()-1);
+            used -= SLOT_SIZE;
+        }
+        t.setRecordId(new RecordId(new HeapPageId(-1,-1),-1));
+    }
+
+    @Override
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("The tuple does not match the page's TupleDesc");
+        }
+        if (!hasRoomFor(t)) {
+            throw new DbException("This page is full");
+        }
+        used += spaceFor(t);
+        int slot = slots.indexOf(null);
+        if (slot < 0) {
+            slot = slots.size();
+            slots.add(t);
+        }else {
+            slots.set(slot, t);
+        }
+        t.setRecordId(new RecordId(getId(), slot));
+    }
+
+    @Override
+    public boolean hasRoomFor(Tuple t) {
+        return used + spaceFor(t) <= BufferPool.getPageSize();
+    }
+
+    /**
+     * Returns the number of tuples that can still be inserted into this
+     * page whatever their length, i.e. counting each at its maximum size.
+     * Shorter tuples may fit when this is 0; see {@link #hasRoomFor}.
+     */
+    @Override
+    public int getNumEmptySlots() {
+        int free = BufferPool.getPageSize() - used;
+        int max = maxRecordSize(td);
+        int freeSlots = 0;
+        for (Tuple t : slots) {
+            if (t == null) {
+                freeSlots++;
+            }
+        }
+        int n = Math.min(freeSlots, free / max);
+        if (n == freeSlots) {
+            n += (free - n*max) / (max + SLOT_SIZE);
+        }
+        return n;
+    }
+
+    /** Returns the number of bytes not taken by the header, slots or records. */
+    @Override
+    public int getFreeSpace() {
+        return BufferPool.getPageSize() - used;
+    }
+
+    @Override
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < slots.size() && slots.get(i) != null;
+    }
+
+    @Override
+    public Iterator<Tuple> iterator() {
+        return slots.stream().filter(Objects::nonNull).iterator();
+    }
+}
@@ -38,6 +38,18 @@ public class Tuple implements Serializable {
         }
     }
 
+    /**
+     * Create a tuple of td holding the given fields, without first filling
+     * in default ones; for pages parsing their records and for views.
+     */
+    Tuple(TupleDesc td, Field[] fields) {
+        this.td = td;
+        this.fields = new ArrayList<>(fields.length);
+        for (Field f : fields) {
+            this.fields.add(f);
+        }
+    }
+
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
@@ -91,6 +103,25 @@ public class Tuple implements Serializable {
         return fields.get(i);
     }
 
+    /**
+     * @return the value of the ith field, which must be an int field.
+     *
+     * @param i
+     *            field index to return. Must be a valid index.
+     */
+    public int getInt(int i) {
+        return ((IntField) getField(i)).getValue();
+    }
+
+    /**
+     * Return a Tuple with this tuple's values that stays the same when the
+     * operator that returned this one moves on; this tuple itself unless it
+     * is a {@link TupleView}.
+     */
+    public Tuple materialize() {
+        return this;
+    }
+
     /**
      * Returns the contents of this Tuple as a string. Note that to pass the
      * system tests, the format needs to be as follows:
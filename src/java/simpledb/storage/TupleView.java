@@ -0,0 +1,175 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only Tuple that reads its fields straight from a slot of a page's
+ * bytes, where the page's layout puts them, so only the fields asked for
+ * are read; on a {@link PaxHeapPage}, only their columns. A scan moves the
+ * same view from slot to slot instead of creating a Tuple per row, so the
+ * view only holds a row's values until the scan's next call to next().
+ * Operators that keep tuples past that call take a {@link #materialize}
+ * copy.
+ * <p>
+ * {@link #getInt} reads an int field without creating a Field;
+ * {@link #getField} creates one for each call. The setters throw
+ * UnsupportedOperationException.
+ *
+ * @see HeapPage#iterator(TupleView)
+ * @see DbFile#viewIterator
+ */
+public class TupleView extends Tuple {
+    private static final long serialVersionUID = 1L;
+
+    /** For each field of this view, the field of the page's records it reads. */
+    private final int[] fields;
+    /** The view whose position this one reads at, for projections; null if this view is moved itself. */
+    private final TupleView source;
+
+    private transient ByteBuffer buf;
+    /** Field j of slot i is at base[j] + i*stride[j], as in HeapPage. */
+    private int[] base;
+    private int[] stride;
+    private PageId pid;
+    private int slot;
+
+    /** Create a view of records of td, not positioned on any yet. */
+    public TupleView(TupleDesc td) {
+        super(td, new Field[0]);
+        fields = new int[td.numFields()];
+        for (int i=0; i<fields.length; i++) {
+            fields[i] = i;
+        }
+        source = null;
+    }
+
+    private TupleView(TupleDesc td, int[] fields, TupleView source) {
+        super(td, new Field[0]);
+        this.fields = fields;
+        this.source = source;
+    }
+
+    /**
+     * Return a view, with TupleDesc td, of the given fields of this view.
+     * It reads at this view's position, so it follows this view as it moves.
+     */
+    public TupleView project(TupleDesc td, int[] fields) {
+        TupleView root = source == null ? this : source;
+        int[] projected = new int[fields.length];
+        for (int i=0; i<fields.length; i++) {
+            projected[i] = this.fields[fields[i]];
+        }
+        return new TupleView(td, projected, root);
+    }
+
+    /** Position this view on slot slot of page pid, whose bytes are buf, laid out as base and stride. */
+    void moveTo(ByteBuffer buf, int[] base, int[] stride, PageId pid, int slot) {
+        this.buf = buf;
+        this.base = base;
+        this.stride = stride;
+        this.pid = pid;
+        this.slot = slot;
+    }
+
+    /** Offset in the bytes of r of field i of this view. */
+    private int offset(TupleView r, int i) {
+        int f = fields[i];
+        return r.base[f] + r.slot*r.stride[f];
+    }
+
+    private TupleView root() {
+        if (source == null ? buf == null : source.buf == null) {
+            throw new NoSuchElementException("the view is not positioned on a record");
+        }
+        return source == null ? this : source;
+    }
+
+    @Override
+    public int getInt(int i) {
+        TupleView r = root();
+        return r.buf.getInt(offset(r, i));
+    }
+
+    @Override
+    public Field getField(int i) {
+        TupleView r = root();
+        Type type = getTupleDesc().getFieldType(i);
+        if (type == Type.INT_TYPE) {
+            return new IntField(r.buf.getInt(offset(r, i)));
+        }
+        try {
+            return type.parse(r.buf, offset(r, i));
+        } catch (java.text.ParseException e) {
+            throw new IllegalStateException("parsing error in slot " + r.slot, e);
+        }
+    }
+
+    @Override
+    public void setField(int i, Field f) {
+        throw new UnsupportedOperationException("a TupleView is read-only");
+    }
+
+    @Override
+    public RecordId getRecordId() {
+        TupleView r = root();
+        return new RecordId(r.pid, r.slot);
+    }
+
+    @Override
+    public void setRecordId(RecordId rid) {
+        throw new UnsupportedOperationException("a TupleView is read-only");
+    }
+
+    @Override
+    public void resetTupleDesc(TupleDesc td) {
+        throw new UnsupportedOperationException("a TupleView is read-only");
+    }
+
+    /** Return a Tuple holding the values and RecordId this view has now. */
+    @Override
+    public Tuple materialize() {
+        Field[] values = new Field[fields.length];
+        for (int i=0; i<values.length; i++) {
+            values[i] = getField(i);
+        }
+        Tuple t = new Tuple(getTupleDesc(), values);
+        t.setRecordId(getRecordId());
+        return t;
+    }
+
+    @Override
+    public Iterator<Field> fields() {
+        return new Iterator<Field>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < fields.length;
+            }
+
+            @Override
+            public Field next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getField(i++);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<fields.length; i++) {
+            if (i > 0) {
+                sb.append('\t');
+            }
+            sb.append(getField(i));
+        }
+        return sb.toString();
+    }
+}
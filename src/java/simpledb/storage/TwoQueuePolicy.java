@@ -0,0 +1,88 @@
+package simpledb.storage;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.function.IntPredicate;
+
+/**
+ * 2Q replacement (Johnson and Shasha). Newly read pages enter a small FIFO
+ * queue A1in; only pages referenced again after leaving it (remembered by
+ * PageId in the ghost queue A1out) are promoted to the main LRU queue Am.
+ * A sequential scan therefore only churns A1in and leaves Am, the hot set,
+ * alone.
+ */
+public class TwoQueuePolicy implements ReplacementPolicy {
+    private final LinkedHashSet<Integer> a1in = new LinkedHashSet<>();
+    private final LinkedHashSet<Integer> am = new LinkedHashSet<>();
+    private final LinkedHashSet<PageId> a1out = new LinkedHashSet<>();
+    private final PageId[] pages;
+    /** Target size of A1in, a quarter of the frames as suggested by the paper. */
+    private final int kin;
+    /** Capacity of the ghost queue A1out, half the frames. */
+    private final int kout;
+
+    public TwoQueuePolicy(int numFrames) {
+        pages = new PageId[numFrames];
+        kin = Math.max(1, numFrames / 4);
+        kout = Math.max(1, numFrames / 2);
+    }
+
+    @Override
+    public void admit(int frame, PageId pid) {
+        pages[frame] = pid;
+        if (a1out.remove(pid)){
+            am.add(frame);
+        }else {
+            a1in.add(frame);
+        }
+    }
+
+    @Override
+    public void touch(int frame) {
+        // hits in A1in are treated as correlated references and ignored
+        if (am.remove(frame)){
+            am.add(frame);
+        }
+    }
+
+    @Override
+    public void remove(int frame) {
+        if (a1in.remove(frame)){
+            a1out.add(pages[frame]);
+            if (a1out.size() > kout){
+                Iterator<PageId> it = a1out.iterator();
+                it.next();
+                it.remove();
+            }
+        }else {
+            am.remove(frame);
+        }
+        pages[frame] = null;
+    }
+
+    @Override
+    public int victim(IntPredicate evictable) {
+        int frame;
+        if (a1in.size() > kin || am.isEmpty()){
+            frame = firstEvictable(a1in, evictable);
+            if (frame == -1){
+                frame = firstEvictable(am, evictable);
+            }
+        }else {
+            frame = firstEvictable(am, evictable);
+            if (frame == -1){
+                frame = firstEvictable(a1in, evictable);
+            }
+        }
+        return frame;
+    }
+
+    private static int firstEvictable(LinkedHashSet<Integer> queue, IntPredicate evictable) {
+        for (int frame : queue){
+            if (evictable.test(frame)){
+                return frame;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,201 @@
+package simpledb.storage;
+
+import simpledb.transaction.TransactionId;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Committed versions of pages for snapshot (read-only) transactions.
+ * <p>
+ * Every commit gets a timestamp from a logical clock, and a snapshot taken at
+ * time s sees exactly the commits with timestamps up to s. While any snapshot
+ * is open, a commit that changes a page keeps the page's previous committed
+ * version (its before image) here, tagged with the range of snapshot times
+ * that should see it; versions no open snapshot can see are dropped when a
+ * snapshot ends. A page no commit has changed since a snapshot started is
+ * read from its before image in the pool, so its current version is never
+ * kept; with no snapshot open nothing is kept.
+ * <p>
+ * A commit publishes its pages and its timestamp while holding this object's
+ * monitor, and snapshots start under the same monitor, so a snapshot never
+ * sees half a commit. The monitor is taken before any partition latch.
+ */
+class VersionStore {
+
+    /** A committed version of a page, seen by snapshots taken in [start, end). */
+    static class Version {
+        final Page page;
+        final long start;
+        final long end;
+
+        Version(Page page, long start, long end) {
+            this.page = page;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /** Timestamp of the last published commit; guarded by this. */
+    private long clock = 0;
+    /** Snapshot time of each open snapshot transaction. */
+    private final Map<TransactionId, Long> snapshots = new ConcurrentHashMap<>();
+    /** Number of open snapshots per snapshot time; guarded by this. */
+    private final TreeMap<Long, Integer> openTimes = new TreeMap<>();
+    /** Kept versions of each page, oldest first; guarded by this. */
+    private final Map<PageId, Deque<Version>> versions = new HashMap<>();
+    /** Timestamp of the last commit of each page changed while a snapshot was open; guarded by this. */
+    private final Map<PageId, Long> lastCommit = new HashMap<>();
+    /** Pages validated optimistic transactions have yet to commit; guarded by this. */
+    private final Set<PageId> pending = new HashSet<>();
+    /** The pages each validated optimistic transaction will commit. */
+    private final Map<TransactionId, Collection<PageId>> validated = new ConcurrentHashMap<>();
+
+    /** Start a snapshot for tid at the time of the last published commit. */
+    synchronized void begin(TransactionId tid) {
+        snapshots.put(tid, clock);
+        openTimes.merge(clock, 1, Integer::sum);
+    }
+
+    /** Return tid's snapshot time, or null if tid is not a snapshot transaction. */
+    Long snapshotOf(TransactionId tid) {
+        return snapshots.get(tid);
+    }
+
+    /** End tid's snapshot, if it has one, and drop versions no open snapshot can see. */
+    synchronized boolean end(TransactionId tid) {
+        Long s = snapshots.remove(tid);
+        if (s == null){
+            return false;
+        }
+        if (openTimes.merge(s, -1, Integer::sum) == 0){
+            openTimes.remove(s);
+        }
+        // with none open, the next snapshot sees only current versions
+        long oldest = openTimes.isEmpty() ? Long.MAX_VALUE : openTimes.firstKey();
+        Iterator<Deque<Version>> it = versions.values().iterator();
+        while (it.hasNext()){
+            Deque<Version> chain = it.next();
+            while (!chain.isEmpty() && chain.peekFirst().end <= oldest){
+                chain.pollFirst();
+            }
+            if (chain.isEmpty()){
+                it.remove();
+            }
+        }
+        if (openTimes.isEmpty()){
+            lastCommit.clear();
+        }else {
+            lastCommit.values().removeIf(ts -> ts <= oldest);
+        }
+        return true;
+    }
+
+    /**
+     * Validate optimistic transaction tid, which read or wrote accessed and
+     * will commit writes: it fails if a commit after tid's snapshot changed
+     * any page of accessed, or if another validated transaction has yet to
+     * commit one. On success tid's snapshot ends and its writes are pending
+     * until {@link #committed}, so transactions validated meanwhile that
+     * read them fail.
+     */
+    synchronized boolean validate(TransactionId tid, Collection<PageId> accessed, Collection<PageId> writes) {
+        long s = snapshots.get(tid);
+        for (PageId pid : accessed){
+            if (lastCommit.getOrDefault(pid, 0L) > s || pending.contains(pid)){
+                return false;
+            }
+        }
+        pending.addAll(writes);
+        validated.put(tid, writes);
+        end(tid);
+        return true;
+    }
+
+    /** Drop the pending writes of tid, once validated, now that it has committed or aborted. */
+    void committed(TransactionId tid) {
+        Collection<PageId> writes = validated.remove(tid);
+        if (writes != null){
+            synchronized (this){
+                pending.removeAll(writes);
+            }
+        }
+    }
+
+    synchronized boolean hasSnapshots() {
+        return !openTimes.isEmpty();
+    }
+
+    /** Return the timestamp the next commit will publish. Must hold the monitor until publish. */
+    long nextCommit() {
+        return clock + 1;
+    }
+
+    /**
+     * Record that the commit at ts changes page, whose before image is still
+     * the previous committed version. Must be called before the page's
+     * before image is reset, holding the monitor.
+     */
+    void retire(Page page, long ts) {
+        PageId pid = page.getId();
+        if (openTimes.isEmpty()){
+            return;
+        }
+        versions.computeIfAbsent(pid, p -> new ArrayDeque<>())
+                .addLast(new Version(page.getBeforeImage(), lastCommit.getOrDefault(pid, 0L), ts));
+        lastCommit.put(pid, ts);
+    }
+
+    /** Make the commit at ts visible to snapshots started from now on. */
+    void publish(long ts) {
+        clock = ts;
+    }
+
+    /** Return the version of pid a snapshot at s sees if one is kept here, else null. */
+    synchronized Page lookup(PageId pid, long s) {
+        Deque<Version> chain = versions.get(pid);
+        if (chain == null){
+            return null;
+        }
+        for (Version v : chain){
+            if (v.start <= s && s < v.end){
+                return v.page;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the version of pid a snapshot at s sees, given live, the page as
+     * read into the pool (or a ring) after the snapshot started. Unless a
+     * later commit changed it since, the snapshot sees live's committed
+     * content, its before image. Nothing is kept for it: a later commit of
+     * the page keeps that version itself, in {@link #retire}.
+     */
+    synchronized Page read(PageId pid, long s, Page live) {
+        Page kept = lookup(pid, s);
+        if (kept != null){
+            return kept;
+        }
+        // a commit after s would have kept the version s sees
+        assert lastCommit.getOrDefault(pid, 0L) <= s;
+        return live.getBeforeImage();
+    }
+
+    /** Return the number of page versions kept. */
+    synchronized int size() {
+        int n = 0;
+        for (Deque<Version> chain : versions.values()){
+            n += chain.size();
+        }
+        return n;
+    }
+}
@@ -1,6 +1,7 @@
 package simpledb.transaction;
 
 import simpledb.common.Database;
+import simpledb.common.DbException;
 
 import java.io.*;
 
@@ -12,6 +13,10 @@ import java.io.*;
 public class Transaction {
     private final TransactionId tid;
     volatile boolean started = false;
+    /** Read-only snapshot transaction: no locks and no log records. */
+    volatile boolean snapshot = false;
+    /** Optimistic transaction: no locks until it is validated at commit. */
+    volatile boolean optimistic = false;
 
     public Transaction() {
         tid = new TransactionId();
@@ -27,11 +32,57 @@ public class Transaction {
         }
     }
 
+    /**
+     * Start the transaction as a read-only snapshot: it reads the database as
+     * committed when it starts, without taking locks, and may not update it.
+     */
+    public void startSnapshot() {
+        started = true;
+        snapshot = true;
+        Database.getBufferPool().beginSnapshot(tid);
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Start the transaction in optimistic mode: it takes no locks while it
+     * runs, reading the database as committed when it starts and keeping
+     * its writes private, and is validated when it commits.
+     *
+     * @see simpledb.storage.BufferPool#beginOptimistic
+     */
+    public void startOptimistic() {
+        start();
+        optimistic = true;
+        Database.getBufferPool().beginOptimistic(tid);
+    }
+
+    public boolean isOptimistic() {
+        return optimistic;
+    }
+
+    /**
+     * Validate an optimistic transaction, so that commit cannot fail. If
+     * this throws the transaction must be aborted, as after any other
+     * TransactionAbortedException. Does nothing for other transactions.
+     */
+    public void validate() throws TransactionAbortedException, DbException {
+        if (started && optimistic) {
+            Database.getBufferPool().validateOptimistic(tid);
+        }
+    }
+
     public TransactionId getId() {
         return tid;
     }
 
-    /** Finish the transaction */
+    /**
+     * Finish the transaction. An optimistic transaction not validated yet
+     * is validated first; if that fails it is aborted and an IOException
+     * is thrown.
+     */
     public void commit() throws IOException {
         transactionComplete(false);
     }
@@ -41,20 +92,42 @@ public class Transaction {
         transactionComplete(true);
     }
 
-    /** Handle the details of transaction commit / abort */
+    /**
+     * Handle the details of transaction commit / abort. An optimistic
+     * transaction that fails validation at commit is aborted instead, and
+     * an IOException is thrown.
+     */
     public void transactionComplete(boolean abort) throws IOException {
 
-        if (started) {
+        if (!abort && started && optimistic) {
+            try {
+                validate();
+            } catch (TransactionAbortedException | DbException e) {
+                transactionComplete(true);
+                throw new IOException("optimistic transaction " + tid.getId() + " failed validation", e);
+            }
+        }
+
+        if (started && snapshot) {
+            // nothing to roll back or log
+            Database.getBufferPool().transactionComplete(tid, !abort);
+            started = false;
+        } else if (started) {
             //write abort log record and rollback transaction
             if (abort) {
                 Database.getLogFile().logAbort(tid); //does rollback too
             } 
 
-            // Release locks and flush pages if needed
+            // under NO FORCE the buffer pool logs the commit itself, before
+            // it releases the locks
+            boolean logCommit = !abort && Database.getBufferPool().isForceOnCommit();
+
+            // Release locks and flush pages if needed; validated above, so
+            // an optimistic commit cannot fail here
             Database.getBufferPool().transactionComplete(tid, !abort); // release locks
 
             // write commit log record
-            if (!abort) {
+            if (logCommit) {
             	Database.getLogFile().logCommit(tid);
             }
 
@@ -6,6 +6,7 @@ import simpledb.storage.*;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
 
+import java.io.File;
 import java.util.*;
 import org.junit.After;
 import org.junit.Before;
@@ -81,6 +82,18 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         assertFalse(page.isSlotUsed(20));
     }
 
+    /**
+     * Unit test for HeapFile.readPage() of a missing file
+     */
+    @Test
+    public void readPageOfMissingFile() throws Exception {
+        File f = File.createTempFile("missing", ".dat");
+        assertTrue(f.delete());
+        HeapFile missing = new HeapFile(f, td);
+        assertNull(missing.readPage(new HeapPageId(missing.getId(), 0)));
+        assertFalse(f.exists());
+    }
+
     @Test
     public void testIteratorBasic() throws Exception {
         HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
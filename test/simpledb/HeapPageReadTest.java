@@ -123,6 +123,29 @@ public class HeapPageReadTest extends SimpleDbTestBase {
             assertFalse(page.isSlotUsed(i));
     }
 
+    /**
+     * Tuples are parsed from the page bytes when first returned, once.
+     */
+    @Test public void lazyParsing() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        // an unread page gives back the bytes it was built from
+        assertTrue(Arrays.equals(EXAMPLE_DATA, page.getPageData()));
+
+        List<Tuple> first = new ArrayList<>();
+        page.iterator().forEachRemaining(first::add);
+        assertEquals(EXAMPLE_VALUES.length, first.size());
+        Iterator<Tuple> again = page.iterator();
+        for (int row = 0; row < first.size(); row++) {
+            Tuple tup = again.next();
+            assertTrue(tup == first.get(row));
+            assertEquals(EXAMPLE_VALUES[row][0], ((IntField) tup.getField(0)).getValue());
+            assertEquals(EXAMPLE_VALUES[row][1], ((IntField) tup.getField(1)).getValue());
+            assertEquals(new RecordId(pid, row), tup.getRecordId());
+        }
+        assertFalse(again.hasNext());
+        assertTrue(Arrays.equals(EXAMPLE_DATA, page.getPageData()));
+    }
+
     /**
      * JUnit suite target
      */
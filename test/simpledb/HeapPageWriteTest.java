@@ -2,6 +2,7 @@ package simpledb;
 
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.NoSuchElementException;
 
 import junit.framework.JUnit4TestAdapter;
 
@@ -131,6 +132,32 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.iterator() after deletes, calling next() alone
+     */
+    @Test public void iteratorSkipsDeletedSlots() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        Iterator<Tuple> it = page.iterator();
+        Tuple first = it.next();
+        Tuple second = it.next();
+        page.deleteTuple(first);
+        int n = 0;
+        for (it = page.iterator(); it.hasNext(); it.next())
+            n++;
+
+        // the deleted tuple's bytes are still on the page
+        it = page.iterator();
+        assertEquals(second, it.next());
+        for (int i = 1; i < n; i++)
+            assertNotNull(it.next());
+        try {
+            it.next();
+            fail("expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // explicitly ignored
+        }
+    }
+
     /**
      * JUnit suite target
      */
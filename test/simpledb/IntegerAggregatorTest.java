@@ -130,6 +130,25 @@ public class IntegerAggregatorTest extends SimpleDbTestBase {
     }
   }
 
+  /**
+   * Test that an avg is the group's sum over its count, not a running average
+   * truncated at every merge
+   */
+  @Test public void mergeAvgOfSum() throws Exception {
+    OpIterator scan = TestUtil.createTupleList(width1,
+        new int[] { 1, 0,
+                    1, 3,
+                    1, 3 });
+    scan.open();
+    IntegerAggregator agg = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.AVG);
+    while (scan.hasNext())
+      agg.mergeTupleIntoGroup(scan.next());
+
+    OpIterator it = agg.iterator();
+    it.open();
+    TestUtil.matchAllTuples(TestUtil.createTupleList(width1, new int[] { 1, 2 }), it);
+  }
+
   /**
    * Test IntegerAggregator.iterator() for OpIterator behaviour
    */
@@ -0,0 +1,356 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.LockManager.DeadlockPolicy;
+import simpledb.LockManager.LockType;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.PageId;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Checks that LockManager aborts the youngest transaction of a deadlock as
+ * soon as the cycle closes, and leaves transactions that merely wait alone.
+ */
+public class LockManagerTest {
+    private LockManager lm;
+    private PageId p0, p1;
+    private TransactionId older, younger;
+
+    @Before public void setUp() {
+        lm = new LockManager();
+        p0 = new HeapPageId(1, 0);
+        p1 = new HeapPageId(1, 1);
+        older = new TransactionId();
+        younger = new TransactionId();
+    }
+
+    /** Start a thread that requests an exclusive lock on pid for tid, recording the outcome. */
+    private Thread request(TransactionId tid, PageId pid, AtomicReference<Object> outcome) {
+        return request(tid, pid, LockType.XLock, outcome);
+    }
+
+    private Thread request(TransactionId tid, PageId pid, LockType type, AtomicReference<Object> outcome) {
+        Thread t = new Thread(() -> {
+            try {
+                lm.acquireLock(tid, pid, type);
+                outcome.set("granted");
+            } catch (TransactionAbortedException e) {
+                outcome.set(e);
+                lm.releaseTransaction(tid);
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    private static void awaitBlocked(Thread t) throws InterruptedException {
+        while (t.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test public void testRequesterIsVictim() throws Exception {
+        lm.acquireLock(older, p0, LockType.SLock);
+        lm.acquireLock(younger, p1, LockType.SLock);
+        AtomicReference<Object> outcome = new AtomicReference<>();
+        Thread t = request(older, p1, outcome);
+        awaitBlocked(t);
+
+        long start = System.currentTimeMillis();
+        try {
+            lm.acquireLock(younger, p0, LockType.XLock);
+            fail("expected the younger transaction to be aborted");
+        } catch (TransactionAbortedException expected) {
+        }
+        assertTrue(System.currentTimeMillis() - start < 500);
+        assertTrue(lm.holdsLock(younger, p1));
+
+        lm.releaseTransaction(younger);
+        t.join();
+        assertEquals("granted", outcome.get());
+    }
+
+    @Test public void testBlockedVictimIsWoken() throws Exception {
+        lm.acquireLock(older, p0, LockType.SLock);
+        lm.acquireLock(younger, p1, LockType.SLock);
+        AtomicReference<Object> outcome = new AtomicReference<>();
+        Thread t = request(younger, p0, outcome);
+        awaitBlocked(t);
+
+        lm.acquireLock(older, p1, LockType.XLock);
+        t.join();
+        assertTrue(outcome.get() instanceof TransactionAbortedException);
+        assertTrue(lm.holdsLock(older, p1));
+    }
+
+    @Test public void testUpgradeDeadlock() throws Exception {
+        lm.acquireLock(older, p0, LockType.SLock);
+        lm.acquireLock(younger, p0, LockType.SLock);
+        AtomicReference<Object> outcome = new AtomicReference<>();
+        Thread t = request(older, p0, outcome);
+        awaitBlocked(t);
+
+        try {
+            lm.acquireLock(younger, p0, LockType.XLock);
+            fail("expected the younger transaction to be aborted");
+        } catch (TransactionAbortedException expected) {
+        }
+        lm.releaseTransaction(younger);
+        t.join();
+        assertEquals("granted", outcome.get());
+    }
+
+    @Test public void testLongWaitNotAborted() throws Exception {
+        lm.acquireLock(older, p0, LockType.XLock);
+        AtomicReference<Object> outcome = new AtomicReference<>();
+        Thread t = request(younger, p0, outcome);
+        awaitBlocked(t);
+
+        // longer than the old lock timeout
+        Thread.sleep(1500);
+        assertNull(outcome.get());
+        lm.releaseLock(older, p0);
+        t.join();
+        assertEquals("granted", outcome.get());
+    }
+
+    @Test public void testRandomDeadlocksResolve() throws Exception {
+        runRandomTransactions();
+    }
+
+    @Test public void testRandomDeadlocksPrevented() throws Exception {
+        lm.setLockTimeout(50);
+        for (DeadlockPolicy policy : new DeadlockPolicy[] { DeadlockPolicy.TIMEOUT, DeadlockPolicy.WAIT_DIE, DeadlockPolicy.WOUND_WAIT }) {
+            lm.setDeadlockPolicy(policy);
+            runRandomTransactions();
+        }
+    }
+
+    private void runRandomTransactions() throws Exception {
+        // few pages across shards, so cycles form often; no thread may hang
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                Random rand = new Random();
+                for (int n = 0; n < 200; n++) {
+                    TransactionId tid = new TransactionId();
+                    try {
+                        for (int l = 0; l < 3; l++) {
+                            lm.acquireLock(tid, new HeapPageId(1, rand.nextInt(6)),
+                                    rand.nextBoolean() ? LockType.XLock : LockType.SLock);
+                        }
+                    } catch (TransactionAbortedException e) {
+                        // aborted as a deadlock victim
+                    }
+                    lm.releaseTransaction(tid);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join(30000);
+            assertFalse("deadlock not resolved", t.isAlive());
+        }
+    }
+
+    @Test public void testQueuedWriterNotOvertaken() throws Exception {
+        lm.acquireLock(older, p0, LockType.SLock);
+        AtomicReference<Object> written = new AtomicReference<>();
+        Thread writer = request(younger, p0, LockType.XLock, written);
+        awaitBlocked(writer);
+
+        // compatible with the holder, but queued behind the writer
+        TransactionId reader = new TransactionId();
+        assertFalse(lm.tryAcquireLock(reader, p0, LockType.SLock));
+        AtomicReference<Object> read = new AtomicReference<>();
+        Thread r = request(reader, p0, LockType.SLock, read);
+        awaitBlocked(r);
+
+        lm.releaseTransaction(older);
+        writer.join();
+        assertEquals("granted", written.get());
+        assertNull(read.get());
+        lm.releaseTransaction(younger);
+        r.join();
+        assertEquals("granted", read.get());
+    }
+
+    @Test public void testSharedRequestsGrantedTogether() throws Exception {
+        lm.acquireLock(older, p0, LockType.XLock);
+        TransactionId[] tids = { new TransactionId(), new TransactionId(), new TransactionId(), new TransactionId() };
+        LockType[] types = { LockType.SLock, LockType.SLock, LockType.XLock, LockType.SLock };
+        Thread[] threads = new Thread[tids.length];
+        @SuppressWarnings("unchecked")
+        AtomicReference<Object>[] outcomes = new AtomicReference[tids.length];
+        for (int i = 0; i < tids.length; i++) {
+            outcomes[i] = new AtomicReference<>();
+            threads[i] = request(tids[i], p0, types[i], outcomes[i]);
+            awaitBlocked(threads[i]);
+        }
+
+        // the two readers at the head of the queue, not the writer nor the reader behind it
+        lm.releaseTransaction(older);
+        threads[0].join();
+        threads[1].join();
+        assertEquals(LockType.SLock, lm.getLockType(tids[0], p0));
+        assertEquals(LockType.SLock, lm.getLockType(tids[1], p0));
+        assertNull(outcomes[2].get());
+        assertNull(outcomes[3].get());
+
+        lm.releaseTransaction(tids[0]);
+        lm.releaseTransaction(tids[1]);
+        threads[2].join();
+        assertNull(outcomes[3].get());
+        lm.releaseTransaction(tids[2]);
+        threads[3].join();
+        assertEquals("granted", outcomes[3].get());
+    }
+
+    @Test public void testWaitDie() throws Exception {
+        lm.setDeadlockPolicy(DeadlockPolicy.WAIT_DIE);
+        lm.acquireLock(older, p0, LockType.XLock);
+        lm.acquireLock(younger, p1, LockType.XLock);
+        try {
+            lm.acquireLock(younger, p0, LockType.SLock);
+            fail("expected the younger transaction to die");
+        } catch (TransactionAbortedException expected) {
+        }
+
+        // the older one waits
+        AtomicReference<Object> outcome = new AtomicReference<>();
+        Thread t = request(older, p1, outcome);
+        awaitBlocked(t);
+        lm.releaseTransaction(younger);
+        t.join();
+        assertEquals("granted", outcome.get());
+    }
+
+    @Test public void testWoundWaitBlockedHolder() throws Exception {
+        lm.setDeadlockPolicy(DeadlockPolicy.WOUND_WAIT);
+        lm.acquireLock(older, p1, LockType.XLock);
+        lm.acquireLock(younger, p0, LockType.SLock);
+        // the younger one waits for the older one
+        AtomicReference<Object> outcome = new AtomicReference<>();
+        Thread t = request(younger, p1, outcome);
+        awaitBlocked(t);
+
+        lm.acquireLock(older, p0, LockType.XLock);
+        t.join();
+        assertTrue(outcome.get() instanceof TransactionAbortedException);
+    }
+
+    @Test public void testWoundWaitRunningHolder() throws Exception {
+        lm.setDeadlockPolicy(DeadlockPolicy.WOUND_WAIT);
+        lm.acquireLock(older, p1, LockType.XLock);
+        lm.acquireLock(younger, p0, LockType.XLock);
+        AtomicReference<Object> outcome = new AtomicReference<>();
+        Thread t = request(older, p0, outcome);
+        awaitBlocked(t);
+
+        // wounded while running, so it aborts on its next wait
+        try {
+            lm.acquireLock(younger, p1, LockType.SLock);
+            fail("expected the younger transaction to be wounded");
+        } catch (TransactionAbortedException expected) {
+        }
+        lm.releaseTransaction(younger);
+        t.join();
+        assertEquals("granted", outcome.get());
+    }
+
+    @Test public void testTimeout() throws Exception {
+        lm.setDeadlockPolicy(DeadlockPolicy.TIMEOUT);
+        lm.setLockTimeout(100);
+        lm.acquireLock(older, p0, LockType.XLock);
+        long start = System.currentTimeMillis();
+        try {
+            lm.acquireLock(younger, p0, LockType.SLock);
+            fail("expected the lock wait to time out");
+        } catch (TransactionAbortedException expected) {
+        }
+        assertTrue(System.currentTimeMillis() - start >= 100);
+    }
+
+    @Test public void testIntentionModes() {
+        LockManager.TableKey table = new LockManager.TableKey(1);
+        assertTrue(lm.tryAcquireLock(older, table, LockType.IXLock));
+        assertTrue(lm.tryAcquireLock(younger, table, LockType.IXLock));
+        TransactionId reader = new TransactionId();
+        assertFalse(lm.tryAcquireLock(reader, table, LockType.SLock));
+        assertTrue(lm.tryAcquireLock(reader, table, LockType.ISLock));
+
+        // S plus IX converts to SIX, which admits only IS alongside
+        lm.releaseTransaction(younger);
+        assertTrue(lm.tryAcquireLock(older, table, LockType.SLock));
+        assertEquals(LockType.SIXLock, lm.getLockType(older, table));
+        assertFalse(lm.tryAcquireLock(younger, table, LockType.IXLock));
+    }
+
+    @Test public void testTableLockCoversPages() {
+        assertTrue(lm.tryAcquireLock(older, new LockManager.TableKey(1), LockType.SLock));
+        assertTrue(lm.holdsLock(older, p0));
+        assertFalse(lm.holdsLock(younger, p0));
+    }
+
+    /** Lock pages from..from+n-1 of table 1 for tid in mode, under the matching intention lock. */
+    private void lockPages(TransactionId tid, int from, int n, LockType mode) throws Exception {
+        lm.acquireLock(tid, new LockManager.TableKey(1), mode == LockType.SLock ? LockType.ISLock : LockType.IXLock);
+        for (int i = from; i < from + n; i++) {
+            lm.acquireLock(tid, new HeapPageId(1, i), mode);
+        }
+    }
+
+    @Test public void testNoEscalationByDefault() throws Exception {
+        lockPages(older, 0, 1000, LockType.XLock);
+        assertEquals(LockType.IXLock, lm.getLockType(older, new LockManager.TableKey(1)));
+        assertEquals(LockType.XLock, lm.getLockType(older, p0));
+    }
+
+    @Test public void testEscalation() throws Exception {
+        lm.setEscalationThreshold(4);
+        lockPages(older, 0, 4, LockType.SLock);
+        assertEquals(LockType.SLock, lm.getLockType(older, p0));
+        lockPages(older, 4, 1, LockType.SLock);
+        assertEquals(LockType.SLock, lm.getLockType(older, new LockManager.TableKey(1)));
+        assertNull(lm.getLockType(older, p0));
+        assertTrue(lm.holdsLock(older, new HeapPageId(1, 100)));
+    }
+
+    @Test public void testEscalationToExclusive() throws Exception {
+        lm.setEscalationThreshold(4);
+        lockPages(older, 0, 3, LockType.SLock);
+        lockPages(older, 3, 2, LockType.XLock);
+        assertEquals(LockType.XLock, lm.getLockType(older, new LockManager.TableKey(1)));
+        assertNull(lm.getLockType(older, p0));
+        assertFalse(lm.tryAcquireLock(younger, new LockManager.TableKey(1), LockType.ISLock));
+    }
+
+    @Test public void testEscalationNeverWaits() throws Exception {
+        lm.setEscalationThreshold(4);
+        lm.acquireLock(younger, new LockManager.TableKey(1), LockType.IXLock);
+        lockPages(older, 0, 5, LockType.SLock);
+        assertEquals(LockType.ISLock, lm.getLockType(older, new LockManager.TableKey(1)));
+        assertEquals(LockType.SLock, lm.getLockType(older, p0));
+
+        // retried once another threshold's worth of pages is locked
+        lm.releaseTransaction(younger);
+        lockPages(older, 5, 4, LockType.SLock);
+        assertEquals(LockType.ISLock, lm.getLockType(older, new LockManager.TableKey(1)));
+        lockPages(older, 9, 1, LockType.SLock);
+        assertEquals(LockType.SLock, lm.getLockType(older, new LockManager.TableKey(1)));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockManagerTest.class);
+    }
+}
@@ -0,0 +1,109 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class MappedHeapFileTest extends SimpleDbTestBase {
+    private File file;
+    private HeapFile plain;
+    private MappedHeapFile mapped;
+    private List<List<Integer>> tuples;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        tuples = new ArrayList<>();
+        file = SystemTestUtil.createRandomHeapFileUnopened(2, 3 * 504 + 10, 1000, null, tuples);
+        plain = new HeapFile(file, Utility.getTupleDesc(2));
+        mapped = new MappedHeapFile(file, Utility.getTupleDesc(2));
+        // both share the file, hence the table id
+        Database.getCatalog().addTable(mapped, SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Unit test for MappedHeapFile.readPage(): pages match those read with read calls.
+     */
+    @Test public void readPage() throws Exception {
+        assertEquals(4, mapped.numPages());
+        for (int i = 0; i < mapped.numPages(); i++) {
+            HeapPageId pid = new HeapPageId(mapped.getId(), i);
+            assertArrayEquals(plain.readPage(pid).getPageData(), mapped.readPage(pid).getPageData());
+        }
+        SystemTestUtil.matchTuples(mapped, tuples);
+    }
+
+    /**
+     * Pages appended after the file was first mapped are read through a new mapping.
+     */
+    @Test public void remapOnGrowth() throws Exception {
+        HeapPageId first = new HeapPageId(mapped.getId(), 0);
+        mapped.readPage(first);
+
+        HeapPageId appended = new HeapPageId(mapped.getId(), mapped.numPages());
+        HeapPage page = new HeapPage(appended, HeapPage.createEmptyPageData());
+        page.insertTuple(Utility.getHeapTuple(7, 2));
+        mapped.writePage(page);
+
+        HeapPage read = (HeapPage) mapped.readPage(appended);
+        assertArrayEquals(page.getPageData(), read.getPageData());
+        assertTrue(TestUtil.compareTuples(Utility.getHeapTuple(7, 2), read.iterator().next()));
+    }
+
+    /**
+     * The before image is the on-disk page, even after the page was written back.
+     */
+    @Test public void beforeImageSurvivesWrite() throws Exception {
+        HeapPageId pid = new HeapPageId(mapped.getId(), 0);
+        HeapPage page = (HeapPage) mapped.readPage(pid);
+        byte[] original = page.getPageData();
+
+        page.deleteTuple(page.iterator().next());
+        mapped.writePage(page);
+
+        assertArrayEquals(original, page.getBeforeImage().getPageData());
+        assertArrayEquals(page.getPageData(), mapped.readPage(pid).getPageData());
+    }
+
+    /**
+     * Catalog.loadSchema() loads tables marked mmap as MappedHeapFiles.
+     */
+    @Test public void loadSchema() throws Exception {
+        File dir = file.getParentFile();
+        String name = "mapped" + System.nanoTime();
+        assertTrue(file.renameTo(new File(dir, name + ".dat")));
+        File catalog = new File(dir, name + ".txt");
+        catalog.deleteOnExit();
+        new File(dir, name + ".dat").deleteOnExit();
+        try (FileWriter w = new FileWriter(catalog)) {
+            w.write(name + " (a int, b int) mmap\n");
+            w.write(name + "_plain (a int, b int)\n");
+        }
+        Database.getCatalog().loadSchema(catalog.getAbsolutePath());
+        assertTrue(Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId(name)) instanceof MappedHeapFile);
+        assertFalse(Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId(name + "_plain")) instanceof MappedHeapFile);
+        SystemTestUtil.matchTuples(Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId(name)), tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,224 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.*;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionId;
+
+public class PaxHeapFileTest extends SimpleDbTestBase {
+    private static final Type[] TYPES = { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE };
+    private static final int ROWS = 500;
+
+    private File dir;
+    private String name;
+    private HeapFile rows;
+    private PaxHeapFile pax;
+
+    private static Tuple row(TupleDesc td, int i) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField("name" + i, Type.STRING_LEN));
+        t.setField(2, new IntField(i % 7));
+        return t;
+    }
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        dir = new File(System.getProperty("java.io.tmpdir"));
+        name = "pax" + System.nanoTime();
+        File text = new File(dir, name + ".txt");
+        text.deleteOnExit();
+        try (FileWriter w = new FileWriter(text)) {
+            for (int i = 0; i < ROWS; i++) {
+                w.write(i + ",name" + i + "," + (i % 7) + "\n");
+            }
+        }
+        File rowData = new File(dir, name + "_rows.dat");
+        File paxData = new File(dir, name + ".dat");
+        for (File f : new File[] { rowData, paxData }) {
+            f.deleteOnExit();
+            FreeSpaceMap.fileFor(f).deleteOnExit();
+        }
+        HeapFileEncoder.convert(text, rowData, BufferPool.getPageSize(), TYPES.length, TYPES);
+        HeapFileEncoder.convertPax(text, paxData, BufferPool.getPageSize(), TYPES, ',');
+        rows = new HeapFile(rowData, new TupleDesc(TYPES));
+        Database.getCatalog().addTable(rows, name + "_rows");
+        pax = new PaxHeapFile(paxData, new TupleDesc(TYPES));
+        Database.getCatalog().addTable(pax, name);
+    }
+
+    private List<String> scan(TransactionId tid, DbFile f, boolean views) throws Exception {
+        SeqScan ss = new SeqScan(tid, f.getId(), "");
+        ss.setTupleViews(views);
+        ss.open();
+        List<String> out = new ArrayList<>();
+        while (ss.hasNext()) {
+            out.add(ss.next().toString());
+        }
+        ss.close();
+        return out;
+    }
+
+    /**
+     * The PAX file holds the same rows, in the same slots, as the row file,
+     * with each column's values together.
+     */
+    @Test public void encoderGroupsColumns() throws Exception {
+        assertEquals(rows.numPages(), pax.numPages());
+        HeapPageId pid = new HeapPageId(pax.getId(), 0);
+        byte[] data = pax.readPage(pid).getPageData();
+        HeapPage page = (HeapPage) pax.readPage(pid);
+        int slots = page.getNumEmptySlots();
+        for (Iterator<Tuple> it = page.iterator(); it.hasNext(); it.next()) {
+            slots++;
+        }
+        // the first column's values follow the header, one int per slot
+        int header = (slots + 7) / 8;
+        for (int i = 0; i < 5; i++) {
+            int v = ((data[header + 4*i] & 0xff) << 24) | ((data[header + 4*i + 1] & 0xff) << 16)
+                    | ((data[header + 4*i + 2] & 0xff) << 8) | (data[header + 4*i + 3] & 0xff);
+            assertEquals(i, v);
+        }
+
+        Transaction t = new Transaction();
+        t.start();
+        List<String> expected = scan(t.getId(), rows, false);
+        assertEquals(ROWS, expected.size());
+        assertEquals(expected, scan(t.getId(), pax, false));
+        assertEquals(expected, scan(t.getId(), pax, true));
+        t.commit();
+    }
+
+    /**
+     * getPageData() produces bytes the constructor reads back as the same
+     * page, before and after the page is changed.
+     */
+    @Test public void pageRoundTrip() throws Exception {
+        HeapPageId pid = new HeapPageId(pax.getId(), 0);
+        HeapPage page = (HeapPage) pax.readPage(pid);
+        byte[] data = page.getPageData();
+        assertArrayEquals(data, new PaxHeapPage(pid, data).getPageData());
+
+        Tuple victim = page.iterator().next();
+        page.deleteTuple(victim);
+        Tuple added = row(pax.getTupleDesc(), 9999);
+        page.insertTuple(added);
+        HeapPage copy = new PaxHeapPage(pid, page.getPageData());
+        assertArrayEquals(page.getPageData(), copy.getPageData());
+        Iterator<Tuple> it = copy.iterator();
+        for (Iterator<Tuple> orig = page.iterator(); orig.hasNext(); ) {
+            assertTrue(TestUtil.compareTuples(orig.next(), it.next()));
+        }
+        assertFalse(it.hasNext());
+        assertTrue(page.getBeforeImage() instanceof PaxHeapPage);
+        assertArrayEquals(data, page.getBeforeImage().getPageData());
+    }
+
+    /**
+     * Filter, Project and Aggregate over a PAX table give the results they
+     * give over the row table.
+     */
+    @Test public void narrowQueries() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        for (DbFile f : new DbFile[] { rows, pax }) {
+            SeqScan ss = new SeqScan(t.getId(), f.getId(), "");
+            ss.setTupleViews(true);
+            Predicate p = new Predicate(2, Predicate.Op.EQUALS, new IntField(3));
+            Aggregate sum = new Aggregate(new Project(Arrays.asList(0, 2),
+                    new Type[] { Type.INT_TYPE, Type.INT_TYPE }, new Filter(p, ss)),
+                    0, Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+            sum.open();
+            int expected = 0;
+            for (int i = 3; i < ROWS; i += 7) {
+                expected += i;
+            }
+            assertEquals(expected, sum.next().getInt(0));
+            sum.close();
+        }
+        t.commit();
+    }
+
+    /**
+     * Computing a PAX table's statistics leaves its pages unparsed, so the
+     * planned scans after it still read only the columns they use.
+     */
+    @Test public void statsKeepPagesUnparsed() throws Exception {
+        TableStats stats = new TableStats(pax.getId(), 1);
+        assertEquals(ROWS, stats.totalTuples());
+        Transaction t = new Transaction();
+        t.start();
+        SeqScan ss = new SeqScan(t.getId(), pax.getId(), "");
+        ss.setTupleViews(true);
+        ss.open();
+        assertTrue(ss.next() instanceof TupleView);
+        ss.close();
+        t.commit();
+    }
+
+    /**
+     * Inserts and deletes through the buffer pool are visible after a restart.
+     */
+    @Test public void insertDeleteThroughBufferPool() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        Database.getBufferPool().insertTuple(t.getId(), pax.getId(), row(pax.getTupleDesc(), ROWS));
+        SeqScan ss = new SeqScan(t.getId(), pax.getId(), "");
+        ss.open();
+        Tuple first = ss.next();
+        ss.close();
+        Database.getBufferPool().deleteTuple(t.getId(), first);
+        t.commit();
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Transaction check = new Transaction();
+        check.start();
+        List<String> after = scan(check.getId(), pax, true);
+        assertEquals(ROWS, after.size());
+        assertFalse(after.contains(first.toString()));
+        assertTrue(after.contains(row(pax.getTupleDesc(), ROWS).toString()));
+        check.commit();
+    }
+
+    /**
+     * Catalog.loadSchema() loads tables marked pax as PaxHeapFiles.
+     */
+    @Test public void loadSchema() throws Exception {
+        File catalog = new File(dir, name + "_catalog.txt");
+        catalog.deleteOnExit();
+        try (FileWriter w = new FileWriter(catalog)) {
+            w.write(name + " (id int, name string, g int) pax\n");
+        }
+        Database.getCatalog().loadSchema(catalog.getAbsolutePath());
+        DbFile loaded = Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId(name));
+        assertTrue(loaded instanceof PaxHeapFile);
+        Transaction t = new Transaction();
+        t.start();
+        assertEquals(ROWS, scan(t.getId(), loaded, true).size());
+        t.commit();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxHeapFileTest.class);
+    }
+}
@@ -0,0 +1,192 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionId;
+
+public class SlottedHeapFileTest extends SimpleDbTestBase {
+    private static final Type[] TYPES = { Type.INT_TYPE, Type.STRING_TYPE };
+    private static final int ROWS = 2000;
+
+    private File dir;
+    private String name;
+    private SlottedHeapFile file;
+
+    private static Tuple row(TupleDesc td, int i) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField("name" + i, Type.STRING_LEN));
+        return t;
+    }
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        dir = new File(System.getProperty("java.io.tmpdir"));
+        name = "slotted" + System.nanoTime();
+        File text = new File(dir, name + ".txt");
+        text.deleteOnExit();
+        try (FileWriter w = new FileWriter(text)) {
+            for (int i = 0; i < ROWS; i++) {
+                w.write(i + ",name" + i + "\n");
+            }
+        }
+        File data = new File(dir, name + ".dat");
+        data.deleteOnExit();
+        FreeSpaceMap.fileFor(data).deleteOnExit();
+        HeapFileEncoder.convertSlotted(text, data, BufferPool.getPageSize(), TYPES, ',');
+        file = new SlottedHeapFile(data, new TupleDesc(TYPES));
+        Database.getCatalog().addTable(file, name);
+    }
+
+    private int count(TransactionId tid) throws Exception {
+        SeqScan ss = new SeqScan(tid, file.getId(), "");
+        ss.open();
+        int n = 0;
+        while (ss.hasNext()) {
+            Tuple t = ss.next();
+            assertEquals("name" + ((IntField) t.getField(0)).getValue(), t.getField(1).toString());
+            n++;
+        }
+        ss.close();
+        return n;
+    }
+
+    /**
+     * Short strings take only their length: the table fits in far fewer
+     * pages than the fixed layout's 30 rows per page would need.
+     */
+    @Test public void encoderPacksShortRows() throws Exception {
+        int fixedPages = (ROWS + 29) / 30;
+        assertTrue(file.numPages() * 5 <= fixedPages);
+        Transaction t = new Transaction();
+        t.start();
+        assertEquals(ROWS, count(t.getId()));
+        t.commit();
+    }
+
+    /**
+     * getPageData() produces bytes the constructor reads back as the same page.
+     */
+    @Test public void pageRoundTrip() throws Exception {
+        HeapPageId pid = new HeapPageId(file.getId(), 0);
+        SlottedHeapPage page = (SlottedHeapPage) file.readPage(pid);
+        byte[] data = page.getPageData();
+        SlottedHeapPage copy = new SlottedHeapPage(pid, data);
+        assertArrayEquals(data, copy.getPageData());
+        Iterator<Tuple> it = copy.iterator();
+        for (Iterator<Tuple> orig = page.iterator(); orig.hasNext(); ) {
+            Tuple t = it.next();
+            assertTrue(TestUtil.compareTuples(orig.next(), t));
+            assertEquals(pid, t.getRecordId().getPageId());
+        }
+        assertFalse(it.hasNext());
+
+        SlottedHeapPage empty = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        assertFalse(empty.iterator().hasNext());
+        assertTrue(empty.getNumEmptySlots() > 0);
+    }
+
+    /**
+     * Deleting keeps the other tuples' slots; the freed slot and space are reused.
+     */
+    @Test public void deleteAndReuse() throws Exception {
+        HeapPageId pid = new HeapPageId(file.getId(), 0);
+        SlottedHeapPage page = (SlottedHeapPage) file.readPage(pid);
+        List<Tuple> before = new ArrayList<>();
+        page.iterator().forEachRemaining(before::add);
+        Tuple victim = before.get(3);
+        Tuple next = before.get(4);
+        int free = page.getFreeSpace();
+
+        page.deleteTuple(victim);
+        assertFalse(page.isSlotUsed(3));
+        assertEquals(new RecordId(pid, 4), next.getRecordId());
+        assertTrue(page.getFreeSpace() > free);
+        try {
+            page.deleteTuple(victim);
+            fail("expected DbException");
+        } catch (DbException expected) {
+        }
+
+        Tuple t = row(file.getTupleDesc(), 9999);
+        page.insertTuple(t);
+        assertEquals(new RecordId(pid, 3), t.getRecordId());
+        while (page.hasRoomFor(row(file.getTupleDesc(), 0))) {
+            page.insertTuple(row(file.getTupleDesc(), 0));
+        }
+        try {
+            page.insertTuple(row(file.getTupleDesc(), 0));
+            fail("expected DbException");
+        } catch (DbException expected) {
+        }
+        assertEquals(0, page.getNumEmptySlots());
+
+        // the full page survives a write and read
+        file.writePage(page);
+        assertArrayEquals(page.getPageData(), file.readPage(pid).getPageData());
+    }
+
+    /**
+     * Inserts and deletes through the buffer pool are visible after a restart.
+     */
+    @Test public void insertDeleteThroughBufferPool() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        Tuple added = row(file.getTupleDesc(), ROWS);
+        Database.getBufferPool().insertTuple(t.getId(), file.getId(), added);
+        SeqScan ss = new SeqScan(t.getId(), file.getId(), "");
+        ss.open();
+        Tuple first = ss.next();
+        ss.close();
+        Database.getBufferPool().deleteTuple(t.getId(), first);
+        t.commit();
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Transaction check = new Transaction();
+        check.start();
+        assertEquals(ROWS, count(check.getId()));
+        check.commit();
+    }
+
+    /**
+     * Catalog.loadSchema() loads tables marked slotted as SlottedHeapFiles.
+     */
+    @Test public void loadSchema() throws Exception {
+        File catalog = new File(dir, name + "_catalog.txt");
+        catalog.deleteOnExit();
+        try (FileWriter w = new FileWriter(catalog)) {
+            w.write(name + " (id int, name string) slotted\n");
+        }
+        Database.getCatalog().loadSchema(catalog.getAbsolutePath());
+        DbFile loaded = Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId(name));
+        assertTrue(loaded instanceof SlottedHeapFile);
+        Transaction t = new Transaction();
+        t.start();
+        assertEquals(ROWS, count(t.getId()));
+        t.commit();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,186 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+
+public class TupleViewTest extends SimpleDbTestBase {
+    private static final int ROWS = 3000;
+
+    private final List<List<Integer>> rows = new ArrayList<>();
+
+    private HeapFile table() throws Exception {
+        return SystemTestUtil.createRandomHeapFile(3, ROWS, 100, null, rows);
+    }
+
+    private static SeqScan viewScan(Transaction t, HeapFile f) {
+        SeqScan ss = new SeqScan(t.getId(), f.getId(), "");
+        ss.setTupleViews(true);
+        return ss;
+    }
+
+    /**
+     * A view scan returns every row, as one view moved from row to row.
+     */
+    @Test public void scanReusesOneView() throws Exception {
+        HeapFile f = table();
+        Transaction t = new Transaction();
+        t.start();
+        SeqScan ss = viewScan(t, f);
+        ss.open();
+        Tuple first = ss.next();
+        assertTrue(first instanceof TupleView);
+        Tuple copy = first.materialize();
+        assertFalse(copy instanceof TupleView);
+        assertEquals(new RecordId(new HeapPageId(f.getId(), 0), 0), copy.getRecordId());
+        assertEquals(rows.get(0), SystemTestUtil.tupleToList(copy));
+        assertTrue(ss.next() == first);
+        // the copy keeps the first row's values
+        assertEquals(rows.get(0), SystemTestUtil.tupleToList(copy));
+        assertEquals(rows.get(1), SystemTestUtil.tupleToList(first));
+        assertEquals(new RecordId(new HeapPageId(f.getId(), 0), 1), first.getRecordId());
+        ss.close();
+
+        SystemTestUtil.matchTuples(viewScan(t, f), rows);
+        t.commit();
+    }
+
+    /**
+     * Filter, Project and Aggregate over views give the same results as over Tuples.
+     */
+    @Test public void operatorsOverViews() throws Exception {
+        HeapFile f = table();
+        Transaction t = new Transaction();
+        t.start();
+
+        List<List<Integer>> expected = new ArrayList<>();
+        int sum = 0;
+        for (List<Integer> row : rows) {
+            if (row.get(1) < 30) {
+                expected.add(Arrays.asList(row.get(2), row.get(0)));
+                sum += row.get(2);
+            }
+        }
+        Predicate p = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(30));
+        OpIterator project = new Project(Arrays.asList(2, 0), new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+                new Filter(p, viewScan(t, f)));
+        SystemTestUtil.matchTuples(project, expected);
+
+        Aggregate agg = new Aggregate(new Filter(p, viewScan(t, f)), 2, Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+        agg.open();
+        assertEquals(sum, agg.next().getInt(0));
+        agg.close();
+
+        // grouped: one result per value of column 0
+        Aggregate count = new Aggregate(viewScan(t, f), 1, 0, Aggregator.Op.COUNT);
+        count.open();
+        int total = 0;
+        while (count.hasNext()) {
+            total += count.next().getInt(1);
+        }
+        count.close();
+        assertEquals(ROWS, total);
+
+        // OrderBy keeps its rows, so it copies them
+        OrderBy order = new OrderBy(0, true, viewScan(t, f));
+        order.open();
+        int last = Integer.MIN_VALUE;
+        int n = 0;
+        while (order.hasNext()) {
+            int v = order.next().getInt(0);
+            assertTrue(v >= last);
+            last = v;
+            n++;
+        }
+        order.close();
+        assertEquals(ROWS, n);
+        t.commit();
+    }
+
+    /**
+     * Rows inserted since the page was read are returned as their Tuples;
+     * views are read-only.
+     */
+    @Test public void insertedRowsAndSetters() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        Transaction t = new Transaction();
+        t.start();
+        Tuple added = Utility.getHeapTuple(new int[] { 7, 8 });
+        Database.getBufferPool().insertTuple(t.getId(), f.getId(), added);
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(t.getId(),
+                new HeapPageId(f.getId(), 0), Permissions.READ_ONLY);
+        TupleView view = new TupleView(f.getTupleDesc());
+        int views = 0;
+        boolean found = false;
+        for (java.util.Iterator<Tuple> it = page.iterator(view); it.hasNext(); ) {
+            Tuple row = it.next();
+            if (row == view) {
+                views++;
+                try {
+                    row.setField(0, new IntField(1));
+                    fail("expected UnsupportedOperationException");
+                } catch (UnsupportedOperationException expected) {
+                }
+            }
+            found |= row == added;
+        }
+        assertEquals(10, views);
+        assertTrue(found);
+        t.commit();
+    }
+
+    /**
+     * Planned queries scan through views, and Query returns copies that the
+     * caller can keep.
+     */
+    @Test public void plannedQueryReturnsCopies() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(3, ROWS, 100, null, rows, "c");
+        Database.getCatalog().addTable(f, "planned");
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put("planned", new TableStats(f.getId(), 1));
+        Transaction t = new Transaction();
+        t.start();
+        LogicalPlan lp = new Parser().generateLogicalPlan(t.getId(),
+                "SELECT * FROM planned p WHERE p.c0 >= 0;");
+        Query q = new Query(lp.physicalPlan(t.getId(), stats, false), t.getId());
+        q.start();
+        List<Tuple> kept = new ArrayList<>();
+        while (q.hasNext()) {
+            kept.add(q.next());
+        }
+        q.close();
+        List<List<Integer>> values = new ArrayList<>();
+        for (Tuple row : kept) {
+            assertFalse(row instanceof TupleView);
+            values.add(SystemTestUtil.tupleToList(row));
+        }
+        assertEquals(rows, values);
+        t.commit();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TupleViewTest.class);
+    }
+}
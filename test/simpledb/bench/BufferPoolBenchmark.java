@@ -0,0 +1,70 @@
+package simpledb.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageId;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures getPage throughput (hits and evictions) for a growing number of
+ * threads, with a single partition and with several partitions per core.
+ *
+ * Run with: ant runbench -Dbench=BufferPoolBenchmark
+ */
+public class BufferPoolBenchmark {
+    private static final int TABLE_PAGES = 400;
+    private static final int REQUESTS_PER_THREAD = 200000;
+
+    public static void main(String[] args) throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, TABLE_PAGES * 504, null, null);
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxThreads = Math.max(4, cores);
+        System.out.println("cores: " + cores);
+        // all-hit pool, then a pool that evicts on most requests
+        for (int poolPages : new int[] { TABLE_PAGES, TABLE_PAGES / 8 }) {
+            for (int partitions : new int[] { 1, 2 * maxThreads }) {
+                for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                    BufferPool bp = Database.resetBufferPool(poolPages, partitions);
+                    double opsPerSec = run(bp, f, threads);
+                    System.out.printf("pool=%d partitions=%d threads=%d: %.0f getPage/s%n",
+                            poolPages, partitions, threads, opsPerSec);
+                }
+            }
+        }
+    }
+
+    static double run(BufferPool bp, HeapFile f, int threads) throws InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            workers.add(new Thread(() -> {
+                Random rand = new Random(seed);
+                TransactionId tid = new TransactionId();
+                try {
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        bp.getPage(tid, new HeapPageId(f.getId(), rand.nextInt(f.numPages())), Permissions.READ_ONLY);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    bp.transactionComplete(tid);
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread w : workers) {
+            w.start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        return (double) threads * REQUESTS_PER_THREAD / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,69 @@
+package simpledb.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import simpledb.LockManager;
+import simpledb.LockManager.DeadlockPolicy;
+import simpledb.storage.HeapPageId;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs transactions that each lock a few of a handful of hot pages, shared or
+ * exclusive at random, doing a little work after each lock, from a growing
+ * number of threads, under each deadlock policy. Aborted transactions are
+ * retried. Prints commits per second and aborts per commit.
+ *
+ * Run with: ant runbench -Dbench=DeadlockPolicyBenchmark
+ */
+public class DeadlockPolicyBenchmark {
+    private static final long RUN_MILLIS = 2000;
+    private static final int HOT_PAGES = 16;
+    private static final int LOCKS_PER_TRANSACTION = 4;
+    private static final long WORK_NANOS = 50000;
+    private static final long TIMEOUT_MILLIS = 50;
+
+    public static void main(String[] args) throws Exception {
+        for (DeadlockPolicy policy : DeadlockPolicy.values()) {
+            for (int threads : new int[] { 4, 8, 16 }) {
+                LockManager lm = new LockManager();
+                lm.setDeadlockPolicy(policy);
+                lm.setLockTimeout(TIMEOUT_MILLIS);
+                AtomicLong commits = new AtomicLong();
+                AtomicLong aborts = new AtomicLong();
+                long deadline = System.currentTimeMillis() + RUN_MILLIS;
+                List<Thread> workers = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    Thread w = new Thread(() -> {
+                        Random rand = new Random();
+                        while (System.currentTimeMillis() < deadline) {
+                            TransactionId tid = new TransactionId();
+                            try {
+                                for (int l = 0; l < LOCKS_PER_TRANSACTION; l++) {
+                                    lm.acquireLock(tid, new HeapPageId(0, rand.nextInt(HOT_PAGES)),
+                                            rand.nextBoolean() ? LockManager.LockType.XLock : LockManager.LockType.SLock);
+                                    LockSupport.parkNanos(WORK_NANOS);
+                                }
+                                commits.incrementAndGet();
+                            } catch (TransactionAbortedException e) {
+                                aborts.incrementAndGet();
+                            }
+                            lm.releaseTransaction(tid);
+                        }
+                    });
+                    workers.add(w);
+                    w.start();
+                }
+                for (Thread w : workers) {
+                    w.join();
+                }
+                System.out.printf("%s threads=%d: %.0f commits/s, %.2f aborts/commit%n", policy, threads,
+                        commits.get() * 1000.0 / RUN_MILLIS, (double) aborts.get() / Math.max(1, commits.get()));
+            }
+        }
+    }
+}
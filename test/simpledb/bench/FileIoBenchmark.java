@@ -0,0 +1,107 @@
+package simpledb.bench;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeRootPtrPage;
+import simpledb.index.BTreeUtility;
+import simpledb.storage.BufferPool;
+import simpledb.storage.DbFileChannel;
+import simpledb.storage.HeapFile;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares the per-page I/O cost of the DbFileChannel that HeapFile and
+ * BTreeFile now keep open with the way they used to read a page: a
+ * RandomAccessFile opened per page for heap files, and a stream opened per
+ * page and skipped from byte 0 for B+ tree files. Page reads hit the OS page
+ * cache, so this measures the per-call overhead, not the disk. Only bytes are
+ * read; building the Page object costs the same either way.
+ *
+ * Run with: ant runbench -Dbench=FileIoBenchmark
+ */
+public class FileIoBenchmark {
+    private static final int READS = 20000;
+
+    public static void main(String[] args) throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 2000 * 504, null, null);
+        BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 200000, null, null, 0);
+        Database.getCatalog().addTable(bf, SystemTestUtil.getUUID());
+        int heapPages = hf.numPages();
+        int btreePages = bf.numPages();
+        System.out.println("heap file pages: " + heapPages + ", B+ tree pages: " + btreePages);
+
+        DbFileChannel heapChannel = new DbFileChannel(hf.getFile());
+        DbFileChannel btreeChannel = new DbFileChannel(bf.getFile());
+        byte[] buf = new byte[BufferPool.getPageSize()];
+        // the first round warms up the JIT and the OS cache
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1;
+            Random rand = new Random(0);
+            long start = System.nanoTime();
+            for (int i = 0; i < READS; i++) {
+                heapChannel.read(buf, (long) rand.nextInt(heapPages) * BufferPool.getPageSize());
+            }
+            report(print, "heap page, open channel", start);
+
+            rand = new Random(0);
+            start = System.nanoTime();
+            for (int i = 0; i < READS; i++) {
+                legacyHeapRead(hf, rand.nextInt(heapPages));
+            }
+            report(print, "heap page, RandomAccessFile per page", start);
+
+            rand = new Random(0);
+            start = System.nanoTime();
+            for (int i = 0; i < READS; i++) {
+                btreeChannel.read(buf, btreeOffset(1 + rand.nextInt(btreePages)));
+            }
+            report(print, "B+ tree page, open channel", start);
+
+            rand = new Random(0);
+            start = System.nanoTime();
+            for (int i = 0; i < READS; i++) {
+                legacyBTreeRead(bf, 1 + rand.nextInt(btreePages));
+            }
+            report(print, "B+ tree page, stream skipped from 0", start);
+        }
+        heapChannel.close();
+        btreeChannel.close();
+    }
+
+    private static long btreeOffset(int pgNo) {
+        return BTreeRootPtrPage.getPageSize() + (long) (pgNo - 1) * BufferPool.getPageSize();
+    }
+
+    private static void report(boolean print, String what, long start) {
+        if (print) {
+            System.out.printf("%-40s %8.1f us/page%n", what, (System.nanoTime() - start) / 1e3 / READS);
+        }
+    }
+
+    private static byte[] legacyHeapRead(HeapFile hf, int pgNo) throws IOException {
+        byte[] data = new byte[BufferPool.getPageSize()];
+        RandomAccessFile rfile = new RandomAccessFile(hf.getFile(), "r");
+        rfile.seek((long) pgNo * BufferPool.getPageSize());
+        rfile.read(data);
+        rfile.close();
+        return data;
+    }
+
+    private static byte[] legacyBTreeRead(BTreeFile bf, int pgNo) throws IOException {
+        byte[] data = new byte[BufferPool.getPageSize()];
+        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(bf.getFile()))) {
+            long offset = btreeOffset(pgNo);
+            if (bis.skip(offset) != offset) {
+                throw new IOException("unable to seek");
+            }
+            bis.read(data, 0, BufferPool.getPageSize());
+        }
+        return data;
+    }
+}
@@ -0,0 +1,70 @@
+package simpledb.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.LogFile;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+
+/**
+ * Runs one-insert transactions from a growing number of threads, each on its
+ * own table so they never wait for each other's locks, and prints commits per
+ * second and commits per log force. With group commit the commit rate keeps
+ * growing past the single-thread rate, which is bounded by the log force.
+ *
+ * Run with: ant runbench -Dbench=GroupCommitBenchmark
+ */
+public class GroupCommitBenchmark {
+    private static final long RUN_MILLIS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        LogFile log = Database.getLogFile();
+        for (long window : new long[] { 0, 200 }) {
+            log.setGroupCommitWindow(window);
+            for (int threads : new int[] { 1, 2, 4, 8, 16 }) {
+                Database.resetBufferPool(threads * 8);
+                List<HeapFile> tables = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    tables.add(SystemTestUtil.createRandomHeapFile(2, 0, null, null));
+                }
+                AtomicLong commits = new AtomicLong();
+                long forces = log.getForceCount();
+                long deadline = System.currentTimeMillis() + RUN_MILLIS;
+                List<Thread> workers = new ArrayList<>();
+                for (HeapFile table : tables) {
+                    Thread w = new Thread(() -> {
+                        Tuple tuple = new Tuple(Utility.getTupleDesc(2));
+                        tuple.setField(0, new IntField(1));
+                        tuple.setField(1, new IntField(2));
+                        try {
+                            while (System.currentTimeMillis() < deadline) {
+                                Transaction t = new Transaction();
+                                t.start();
+                                Database.getBufferPool().insertTuple(t.getId(), table.getId(), tuple);
+                                t.commit();
+                                commits.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+                    workers.add(w);
+                    w.start();
+                }
+                for (Thread w : workers) {
+                    w.join();
+                }
+                long n = commits.get();
+                System.out.printf("window=%dus threads=%d: %.0f commits/s, %.1f commits/force%n", window, threads,
+                        n * 1000.0 / RUN_MILLIS, (double) n / Math.max(1, log.getForceCount() - forces));
+            }
+        }
+    }
+}
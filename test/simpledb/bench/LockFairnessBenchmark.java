@@ -0,0 +1,81 @@
+package simpledb.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import simpledb.LockManager;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.PageId;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Streams shared lock requests on one hot page from a growing number of
+ * reader threads while a writer thread asks for an exclusive lock on it now
+ * and then, and prints the percentiles of how long the writer and the readers
+ * waited for their locks. Without fair queueing a steady stream of readers can
+ * keep the writer waiting indefinitely.
+ *
+ * Run with: ant runbench -Dbench=LockFairnessBenchmark
+ */
+public class LockFairnessBenchmark {
+    private static final long RUN_MILLIS = 2000;
+    private static final long HOLD_NANOS = 100000;
+    private static final long WRITER_PAUSE_NANOS = 1000000;
+
+    public static void main(String[] args) throws Exception {
+        PageId hot = new HeapPageId(0, 0);
+        for (int readers : new int[] { 2, 4, 8 }) {
+            LockManager lm = new LockManager();
+            List<Long> writerWaits = Collections.synchronizedList(new ArrayList<>());
+            List<Long> readerWaits = Collections.synchronizedList(new ArrayList<>());
+            AtomicLong reads = new AtomicLong();
+            long deadline = System.currentTimeMillis() + RUN_MILLIS;
+            List<Thread> workers = new ArrayList<>();
+            for (int i = 0; i <= readers; i++) {
+                boolean writer = i == 0;
+                workers.add(new Thread(() -> {
+                    try {
+                        while (System.currentTimeMillis() < deadline) {
+                            TransactionId tid = new TransactionId();
+                            long start = System.nanoTime();
+                            lm.acquireLock(tid, hot, writer ? LockManager.LockType.XLock : LockManager.LockType.SLock);
+                            (writer ? writerWaits : readerWaits).add(System.nanoTime() - start);
+                            LockSupport.parkNanos(HOLD_NANOS);
+                            lm.releaseTransaction(tid);
+                            if (writer) {
+                                LockSupport.parkNanos(WRITER_PAUSE_NANOS);
+                            } else {
+                                reads.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+            }
+            for (Thread w : workers) {
+                w.start();
+            }
+            for (Thread w : workers) {
+                w.join();
+            }
+            System.out.printf("readers=%d: %.0f reads/s, writer %s, readers %s%n", readers,
+                    reads.get() * 1000.0 / RUN_MILLIS, percentiles(writerWaits), percentiles(readerWaits));
+        }
+    }
+
+    /** Format the p50, p99 and max of the waits, in milliseconds. */
+    private static String percentiles(List<Long> waits) {
+        if (waits.isEmpty()) {
+            return "no grants";
+        }
+        List<Long> sorted = new ArrayList<>(waits);
+        Collections.sort(sorted);
+        return String.format("%d grants p50=%.2fms p99=%.2fms max=%.2fms", sorted.size(),
+                sorted.get(sorted.size() / 2) / 1e6, sorted.get(sorted.size() * 99 / 100) / 1e6,
+                sorted.get(sorted.size() - 1) / 1e6);
+    }
+}
@@ -0,0 +1,73 @@
+package simpledb.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.LockManager;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.PageId;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs transactions that each lock a few pages of their thread's own table
+ * and release them, from a growing number of threads, against lock managers
+ * with one shard and with the default number of shards; then times releasing
+ * one transaction holding many locks.
+ *
+ * Run with: ant runbench -Dbench=LockManagerBenchmark
+ */
+public class LockManagerBenchmark {
+    private static final long RUN_MILLIS = 1000;
+    private static final int LOCKS_PER_TRANSACTION = 16;
+    private static final int LARGE_TRANSACTION_LOCKS = 50000;
+
+    public static void main(String[] args) throws Exception {
+        for (int shards : new int[] { 1, LockManager.DEFAULT_SHARDS }) {
+            for (int threads : new int[] { 1, 2, 4, 8 }) {
+                LockManager lm = new LockManager(shards);
+                AtomicLong locks = new AtomicLong();
+                long deadline = System.currentTimeMillis() + RUN_MILLIS;
+                List<Thread> workers = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    int table = i;
+                    Thread w = new Thread(() -> {
+                        int page = 0;
+                        try {
+                            while (System.currentTimeMillis() < deadline) {
+                                TransactionId tid = new TransactionId();
+                                for (int l = 0; l < LOCKS_PER_TRANSACTION; l++) {
+                                    lm.acquireLock(tid, new HeapPageId(table, page++ % 1024),
+                                            l % 4 == 0 ? LockManager.LockType.XLock : LockManager.LockType.SLock);
+                                }
+                                lm.releaseTransaction(tid);
+                                locks.addAndGet(LOCKS_PER_TRANSACTION);
+                            }
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+                    workers.add(w);
+                    w.start();
+                }
+                for (Thread w : workers) {
+                    w.join();
+                }
+                System.out.printf("shards=%d threads=%d: %.0f locks/s%n", shards, threads,
+                        locks.get() * 1000.0 / RUN_MILLIS);
+            }
+        }
+
+        LockManager lm = new LockManager();
+        TransactionId tid = new TransactionId();
+        List<PageId> pids = new ArrayList<>();
+        for (int i = 0; i < LARGE_TRANSACTION_LOCKS; i++) {
+            PageId pid = new HeapPageId(0, i);
+            pids.add(pid);
+            lm.acquireLock(tid, pid, LockManager.LockType.XLock);
+        }
+        long start = System.nanoTime();
+        lm.releaseTransaction(tid);
+        System.out.printf("releasing %d locks: %.1f ms%n", pids.size(), (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -0,0 +1,98 @@
+package simpledb.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionAbortedException;
+
+/**
+ * Runs a writer inserting rows into a table, one per transaction, next to a
+ * growing number of readers scanning the whole table, and prints scans and
+ * commits per second. Locking readers wait for the writer's exclusive page
+ * locks and make it wait for their shared ones; snapshot readers take no
+ * locks, so neither side waits for the other.
+ *
+ * Run with: ant runbench -Dbench=MvccBenchmark
+ */
+public class MvccBenchmark {
+    private static final long RUN_MILLIS = 2000;
+    private static final int ROWS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        for (boolean snapshot : new boolean[] { false, true }) {
+            for (int readers : new int[] { 1, 2, 4 }) {
+                Database.resetBufferPool(64);
+                HeapFile table = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+                AtomicLong scans = new AtomicLong();
+                AtomicLong commits = new AtomicLong();
+                long deadline = System.currentTimeMillis() + RUN_MILLIS;
+                List<Thread> workers = new ArrayList<>();
+                workers.add(new Thread(() -> {
+                    Tuple tuple = new Tuple(Utility.getTupleDesc(2));
+                    tuple.setField(0, new IntField(1));
+                    tuple.setField(1, new IntField(2));
+                    try {
+                        while (System.currentTimeMillis() < deadline) {
+                            Transaction t = new Transaction();
+                            t.start();
+                            try {
+                                Database.getBufferPool().insertTuple(t.getId(), table.getId(), tuple);
+                                t.commit();
+                                commits.incrementAndGet();
+                            } catch (TransactionAbortedException e) {
+                                t.abort();
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+                for (int i = 0; i < readers; i++) {
+                    workers.add(new Thread(() -> {
+                        try {
+                            while (System.currentTimeMillis() < deadline) {
+                                Transaction t = new Transaction();
+                                if (snapshot) {
+                                    t.startSnapshot();
+                                } else {
+                                    t.start();
+                                }
+                                try {
+                                    SeqScan ss = new SeqScan(t.getId(), table.getId(), "");
+                                    ss.open();
+                                    while (ss.hasNext()) {
+                                        ss.next();
+                                    }
+                                    ss.close();
+                                    t.commit();
+                                    scans.incrementAndGet();
+                                } catch (TransactionAbortedException e) {
+                                    t.abort();
+                                }
+                            }
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }));
+                }
+                for (Thread w : workers) {
+                    w.start();
+                }
+                for (Thread w : workers) {
+                    w.join();
+                }
+                System.out.printf("%s readers=%d: %.0f scans/s, %.0f commits/s%n", snapshot ? "snapshot" : "locking",
+                        readers, scans.get() * 1000.0 / RUN_MILLIS, commits.get() * 1000.0 / RUN_MILLIS);
+            }
+        }
+    }
+}
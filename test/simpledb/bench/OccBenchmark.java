@@ -0,0 +1,92 @@
+package simpledb.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionAbortedException;
+
+/**
+ * Runs short transactions that each read a few random pages of a table and
+ * then rewrite one row of another, from a growing number of threads, as
+ * locking and as optimistic transactions. Conflicts are rare since the table
+ * is much larger than what a transaction touches. Aborted transactions are
+ * retried. Prints commits per second and aborts per commit.
+ *
+ * Run with: ant runbench -Dbench=OccBenchmark
+ */
+public class OccBenchmark {
+    private static final long RUN_MILLIS = 2000;
+    private static final int PAGES = 200;
+    private static final int READS_PER_TRANSACTION = 4;
+
+    public static void main(String[] args) throws Exception {
+        for (boolean occ : new boolean[] { false, true }) {
+            for (int threads : new int[] { 1, 2, 4 }) {
+                BufferPool bp = Database.resetBufferPool(2*PAGES);
+                bp.setForceOnCommit(false);
+                HeapFile table = SystemTestUtil.createRandomHeapFile(2, 504*PAGES, null, null);
+                AtomicLong commits = new AtomicLong();
+                AtomicLong aborts = new AtomicLong();
+                long deadline = System.currentTimeMillis() + RUN_MILLIS;
+                List<Thread> workers = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    workers.add(new Thread(() -> {
+                        Random rand = new Random();
+                        try {
+                            while (System.currentTimeMillis() < deadline) {
+                                Transaction t = new Transaction();
+                                if (occ) {
+                                    t.startOptimistic();
+                                } else {
+                                    t.start();
+                                }
+                                try {
+                                    for (int r = 0; r < READS_PER_TRANSACTION; r++) {
+                                        bp.getPage(t.getId(), new HeapPageId(table.getId(), rand.nextInt(PAGES)),
+                                                Permissions.READ_ONLY);
+                                    }
+                                    HeapPage p = (HeapPage) bp.getPage(t.getId(),
+                                            new HeapPageId(table.getId(), rand.nextInt(PAGES)), Permissions.READ_WRITE);
+                                    Tuple row = p.iterator().next();
+                                    p.deleteTuple(row);
+                                    p.insertTuple(row);
+                                    p.markDirty(true, t.getId());
+                                    t.commit();
+                                    commits.incrementAndGet();
+                                } catch (TransactionAbortedException e) {
+                                    t.abort();
+                                    aborts.incrementAndGet();
+                                } catch (IOException e) {
+                                    // an optimistic transaction that failed validation, already aborted
+                                    aborts.incrementAndGet();
+                                }
+                            }
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }));
+                }
+                for (Thread w : workers) {
+                    w.start();
+                }
+                for (Thread w : workers) {
+                    w.join();
+                }
+                System.out.printf("%s threads=%d: %.0f commits/s, %.3f aborts/commit%n", occ ? "optimistic" : "locking",
+                        threads, commits.get() * 1000.0 / RUN_MILLIS, (double) aborts.get() / Math.max(1, commits.get()));
+            }
+        }
+    }
+}
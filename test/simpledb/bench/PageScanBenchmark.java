@@ -0,0 +1,143 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.Filter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+
+/**
+ * Measures the CPU time and heap allocation of turning page bytes into
+ * HeapPages: building pages without looking at their tuples (as inserts,
+ * before images and read-ahead do), iterating all tuples of each page, and
+ * a SeqScan with a filter keeping 1% of the rows, on a table of ints and a
+ * table with a string column, and the sum of a column over the whole table,
+ * both with rows returned as new Tuples and as a moving TupleView.
+ * Read-ahead is off so that all pages are built on the measured thread.
+ *
+ * Run with: ant runbench -Dbench=PageScanBenchmark
+ */
+public class PageScanBenchmark {
+    private static final int ROUNDS = 100;
+    /** Rounds run first so that the JIT has compiled the measured code. */
+    private static final int WARMUP = 20;
+
+    public static void main(String[] args) throws Exception {
+        HeapFile ints = SystemTestUtil.createRandomHeapFile(6, 150 * 84, 1000, null, null);
+        run("6 ints", ints);
+        run("2 ints + string", stringTable(150 * 30));
+    }
+
+    private static HeapFile stringTable(int rows) throws Exception {
+        File text = File.createTempFile("strings", ".txt");
+        text.deleteOnExit();
+        Random rand = new Random(0);
+        try (FileWriter w = new FileWriter(text)) {
+            for (int i = 0; i < rows; i++) {
+                w.write(rand.nextInt(1000) + "," + i + ",name" + i + "\n");
+            }
+        }
+        File data = File.createTempFile("strings", ".dat");
+        data.deleteOnExit();
+        FreeSpaceMap.fileFor(data).deleteOnExit();
+        Type[] types = { Type.INT_TYPE, Type.INT_TYPE, Type.STRING_TYPE };
+        HeapFileEncoder.convert(text, data, BufferPool.getPageSize(), types.length, types);
+        HeapFile f = new HeapFile(data, new TupleDesc(types));
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        return f;
+    }
+
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void run(String name, HeapFile f) throws Exception {
+        List<byte[]> pages = new ArrayList<>();
+        for (int i = 0; i < f.numPages(); i++) {
+            pages.add(f.readPage(new HeapPageId(f.getId(), i)).getPageData());
+        }
+        for (boolean iterate : new boolean[] { false, true }) {
+            long sink = 0;
+            long time = 0;
+            long bytes = 0;
+            for (int round = 0; round < WARMUP + ROUNDS; round++) {
+                long a = allocated();
+                long start = System.nanoTime();
+                for (int i = 0; i < pages.size(); i++) {
+                    HeapPage p = new HeapPage(new HeapPageId(f.getId(), i), pages.get(i));
+                    if (iterate) {
+                        for (Iterator<Tuple> it = p.iterator(); it.hasNext(); ) {
+                            sink += ((IntField) it.next().getField(0)).getValue();
+                        }
+                    }
+                }
+                if (round >= WARMUP) {
+                    time += System.nanoTime() - start;
+                    bytes += allocated() - a;
+                }
+            }
+            long n = (long) ROUNDS * pages.size();
+            System.out.printf("%s, %s: %.1f us/page, %d bytes/page (%d)%n", name,
+                    iterate ? "build and iterate" : "build only", time / 1e3 / n, bytes / n, sink % 10);
+        }
+
+        for (boolean views : new boolean[] { false, true }) {
+            scan(name, f, views, false);
+        }
+        for (boolean views : new boolean[] { false, true }) {
+            scan(name, f, views, true);
+        }
+    }
+
+    /**
+     * Time a SeqScan with a filter keeping 1% of the rows, or with the sum of
+     * the first column over all rows on top, returning rows as Tuples or views.
+     */
+    private static void scan(String name, HeapFile f, boolean views, boolean sum) throws Exception {
+        long time = 0;
+        long bytes = 0;
+        int result = 0;
+        for (int round = 0; round < WARMUP + ROUNDS; round++) {
+            // every scan parses its pages again, all on this thread
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES).setPrefetchPages(0);
+            long a = allocated();
+            long start = System.nanoTime();
+            Transaction t = new Transaction();
+            t.start();
+            SeqScan ss = new SeqScan(t.getId(), f.getId(), "");
+            ss.setTupleViews(views);
+            OpIterator op = sum ? new Aggregate(ss, 0, Aggregator.NO_GROUPING, Aggregator.Op.SUM)
+                    : new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(10)), ss);
+            op.open();
+            result = 0;
+            while (op.hasNext()) {
+                Tuple row = op.next();
+                result = sum ? row.getInt(0) : result + 1;
+            }
+            op.close();
+            t.commit();
+            if (round >= WARMUP) {
+                time += System.nanoTime() - start;
+                bytes += allocated() - a;
+            }
+        }
+        System.out.printf("%s, %s, %s (%d, %d pages): %.2f ms/scan, %d KB/scan%n", name,
+                sum ? "sum" : "filtered scan", views ? "views" : "tuples", result, f.numPages(),
+                time / 1e6 / ROUNDS, bytes / 1024 / ROUNDS);
+    }
+}
@@ -0,0 +1,125 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.*;
+import simpledb.storage.*;
+import simpledb.transaction.Transaction;
+
+/**
+ * Compares narrow queries on a wide table stored as a HeapFile and as a
+ * PaxHeapFile: the sum of one column over the rows where another is small
+ * (about 10% of them), and a projection of two of the columns. Rows are
+ * returned as TupleViews, so only the columns used are read; the row table
+ * is also scanned as Tuples for reference. Each query runs with the buffer
+ * pool reset before each scan, so that every scan reads its pages, and with
+ * the table cached in the pool. Read-ahead is off, so all pages are read
+ * and decoded on the measured thread.
+ *
+ * Run with: ant runbench -Dbench=PaxBenchmark
+ */
+public class PaxBenchmark {
+    private static final int COLUMNS = 16;
+    private static final int ROWS = 40000;
+    private static final int ROUNDS = 50;
+    private static final int WARMUP = 10;
+
+    public static void main(String[] args) throws Exception {
+        File text = File.createTempFile("wide", ".txt");
+        text.deleteOnExit();
+        Random rand = new Random(0);
+        try (FileWriter w = new FileWriter(text)) {
+            for (int i = 0; i < ROWS; i++) {
+                StringBuilder line = new StringBuilder();
+                for (int c = 0; c < COLUMNS; c++) {
+                    line.append(c == 0 ? "" : ",").append(rand.nextInt(1000));
+                }
+                w.write(line.append('\n').toString());
+            }
+        }
+        Type[] types = new Type[COLUMNS];
+        Arrays.fill(types, Type.INT_TYPE);
+        HeapFile rows = new HeapFile(encode(text, types, false), new TupleDesc(types));
+        HeapFile pax = new PaxHeapFile(encode(text, types, true), new TupleDesc(types));
+        Database.getCatalog().addTable(rows, "wide_rows");
+        Database.getCatalog().addTable(pax, "wide_pax");
+        System.out.printf("%d rows of %d ints, %d pages%n", ROWS, COLUMNS, rows.numPages());
+
+        for (boolean cached : new boolean[] { false, true }) {
+            for (boolean project : new boolean[] { false, true }) {
+                run(rows, false, project, cached);
+                run(rows, true, project, cached);
+                run(pax, true, project, cached);
+            }
+        }
+    }
+
+    private static File encode(File text, Type[] types, boolean pax) throws Exception {
+        File data = File.createTempFile(pax ? "wide_pax" : "wide_rows", ".dat");
+        data.deleteOnExit();
+        FreeSpaceMap.fileFor(data).deleteOnExit();
+        if (pax) {
+            HeapFileEncoder.convertPax(text, data, BufferPool.getPageSize(), types, ',');
+        }else {
+            HeapFileEncoder.convert(text, data, BufferPool.getPageSize(), types.length, types);
+        }
+        return data;
+    }
+
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Time a query over f. Unless cached, every scan reads its pages again;
+     * if cached, the pool holds the whole table and only the first scan reads it.
+     */
+    private static void run(HeapFile f, boolean views, boolean project, boolean cached) throws Exception {
+        long time = 0;
+        long bytes = 0;
+        long result = 0;
+        if (cached) {
+            Database.resetBufferPool(f.numPages() + 10).setPrefetchPages(0);
+        }
+        for (int round = 0; round < WARMUP + ROUNDS; round++) {
+            if (!cached) {
+                Database.resetBufferPool(BufferPool.DEFAULT_PAGES).setPrefetchPages(0);
+            }
+            long a = allocated();
+            long start = System.nanoTime();
+            Transaction t = new Transaction();
+            t.start();
+            SeqScan ss = new SeqScan(t.getId(), f.getId(), "");
+            ss.setTupleViews(views);
+            OpIterator op;
+            if (project) {
+                op = new Project(Arrays.asList(3, 11), new Type[] { Type.INT_TYPE, Type.INT_TYPE }, ss);
+            }else {
+                op = new Aggregate(new Filter(new Predicate(7, Predicate.Op.LESS_THAN, new IntField(100)), ss),
+                        3, Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+            }
+            op.open();
+            result = 0;
+            while (op.hasNext()) {
+                Tuple row = op.next();
+                result += project ? row.getInt(0) + row.getInt(1) : row.getInt(0);
+            }
+            op.close();
+            t.commit();
+            if (round >= WARMUP) {
+                time += System.nanoTime() - start;
+                bytes += allocated() - a;
+            }
+        }
+        System.out.printf("%s, %s, %s, %s (%d): %.2f ms/scan, %d KB/scan%n", cached ? "cached" : "read",
+                project ? "project 2 columns" : "sum where", f instanceof PaxHeapFile ? "pax" : "rows",
+                views ? "views" : "tuples", result, time / 1e6 / ROUNDS, bytes / 1024 / ROUNDS);
+    }
+}
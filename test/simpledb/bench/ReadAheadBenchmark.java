@@ -0,0 +1,64 @@
+package simpledb.bench;
+
+import java.io.File;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Page;
+import simpledb.storage.PageId;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Scans a cold table whose page reads each take a fixed latency, with and
+ * without read-ahead, to show that read-ahead overlaps the per-page latency
+ * with the scan.
+ *
+ * Run with: ant runbench -Dbench=ReadAheadBenchmark
+ */
+public class ReadAheadBenchmark {
+    private static final int TABLE_PAGES = 200;
+    private static final long READ_LATENCY_MS = 2;
+
+    /** A heap file on a "disk" with a fixed latency per page read. */
+    static class SlowHeapFile extends HeapFile {
+        SlowHeapFile(File f) {
+            super(f, Utility.getTupleDesc(2));
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            try {
+                Thread.sleep(READ_LATENCY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.readPage(pid);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, TABLE_PAGES * 504, 1000, null, null);
+        SlowHeapFile table = new SlowHeapFile(f);
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        for (int prefetch : new int[] { 0, 2, 8, 16 }) {
+            for (int poolPages : new int[] { TABLE_PAGES * 2, TABLE_PAGES / 8 }) {
+                Database.resetBufferPool(poolPages).setPrefetchPages(prefetch);
+                TransactionId tid = new TransactionId();
+                long start = System.nanoTime();
+                SeqScan scan = new SeqScan(tid, table.getId(), "");
+                scan.open();
+                while (scan.hasNext()) {
+                    scan.next();
+                }
+                scan.close();
+                double secs = (System.nanoTime() - start) / 1e9;
+                Database.getBufferPool().transactionComplete(tid);
+                System.out.printf("prefetch=%d pool=%d (%s): %.0f pages/s%n", prefetch, poolPages,
+                        poolPages >= TABLE_PAGES ? "pool" : "ring", TABLE_PAGES / secs);
+            }
+        }
+    }
+}
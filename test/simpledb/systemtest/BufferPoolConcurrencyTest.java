@@ -0,0 +1,76 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.Page;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Hammers a partitioned BufferPool from several threads with read-only
+ * page requests against a table much larger than the pool. Every request
+ * must return the page that was asked for and the pool must never hold
+ * more pages than it has frames.
+ */
+public class BufferPoolConcurrencyTest extends SimpleDbTestBase {
+    private static final int BUFFER_PAGES = 32;
+    private static final int PARTITIONS = 8;
+    private static final int THREADS = 8;
+    private static final int REQUESTS_PER_THREAD = 5000;
+
+    @Test public void testConcurrentGetPage() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 100 * 504, null, null);
+        final int tableId = f.getId();
+        final int numPages = f.numPages();
+        final BufferPool bp = Database.resetBufferPool(BUFFER_PAGES, PARTITIONS);
+        assertEquals(PARTITIONS, bp.getNumPartitions());
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int seed = t;
+            threads.add(new Thread(() -> {
+                Random rand = new Random(seed);
+                TransactionId tid = new TransactionId();
+                try {
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        HeapPageId pid = new HeapPageId(tableId, rand.nextInt(numPages));
+                        Page p = bp.getPage(tid, pid, Permissions.READ_ONLY);
+                        assertEquals(pid, p.getId());
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    bp.transactionComplete(tid);
+                }
+            }));
+        }
+        for (Thread th : threads) {
+            th.start();
+        }
+        for (Thread th : threads) {
+            th.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(bp.getNumCachedPages() <= BUFFER_PAGES);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolConcurrencyTest.class);
+    }
+}
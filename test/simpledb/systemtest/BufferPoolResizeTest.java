@@ -0,0 +1,176 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Checks that the buffer pool can grow and shrink while in use, keeping the
+ * pages it can and never dropping dirty or pinned ones.
+ */
+public class BufferPoolResizeTest extends SimpleDbTestBase {
+
+    private static void readPages(BufferPool bp, TransactionId tid, HeapFile f, int n) throws Exception {
+        for (int i = 0; i < n; i++) {
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        }
+    }
+
+    private static int count(TransactionId tid, HeapFile f) throws Exception {
+        SeqScan ss = new SeqScan(tid, f.getId(), "");
+        ss.open();
+        int n = 0;
+        while (ss.hasNext()) {
+            ss.next();
+            n++;
+        }
+        ss.close();
+        return n;
+    }
+
+    @Test public void testGrowKeepsCachedPages() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504*8, null, null);
+        BufferPool bp = Database.resetBufferPool(4, 2);
+        TransactionId tid = new TransactionId();
+        readPages(bp, tid, f, 4);
+        bp.resize(8);
+        assertEquals(8, bp.getNumPages());
+        assertEquals(4, bp.getNumCachedPages());
+
+        bp.resetStats();
+        readPages(bp, tid, f, 8);
+        assertEquals(4, bp.getHitCount());
+        assertEquals(8, bp.getNumCachedPages());
+        bp.transactionComplete(tid);
+    }
+
+    @Test public void testShrinkEvictsCleanPages() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504*8, null, null);
+        BufferPool bp = Database.resetBufferPool(8, 2);
+        TransactionId tid = new TransactionId();
+        readPages(bp, tid, f, 8);
+        bp.resize(3);
+        assertEquals(3, bp.getNumPages());
+        assertTrue(bp.getNumCachedPages() <= 3);
+        assertEquals(504*8, count(tid, f));
+        bp.transactionComplete(tid);
+    }
+
+    @Test public void testShrinkWaitsForDirtyPages() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504*4, null, null);
+        BufferPool bp = Database.resetBufferPool(8);
+        Transaction t = new Transaction();
+        t.start();
+        for (int i = 0; i < 4; i++) {
+            HeapPage p = (HeapPage) bp.getPage(t.getId(), new HeapPageId(f.getId(), i), Permissions.READ_WRITE);
+            bp.deleteTuple(t.getId(), p.iterator().next());
+        }
+        try {
+            bp.resize(2, 50);
+            fail("expected DbException");
+        } catch (DbException expected) {
+        }
+        assertEquals(8, bp.getNumPages());
+        assertEquals(4, bp.getNumDirtyPages());
+
+        // the shrink goes through once the writer commits
+        Thread committer = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                t.commit();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        committer.start();
+        bp.resize(2, 5000);
+        committer.join();
+        assertEquals(2, bp.getNumPages());
+
+        Transaction check = new Transaction();
+        check.start();
+        assertEquals(504*4 - 4, count(check.getId(), f));
+        check.commit();
+    }
+
+    @Test public void testShrinkWaitsForUnpin() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504*4, null, null);
+        BufferPool bp = Database.resetBufferPool(4);
+        Transaction t = new Transaction();
+        t.start();
+        readPages(bp, t.getId(), f, 3);
+        HeapPageId last = new HeapPageId(f.getId(), 3);
+        bp.getPinnedPage(t.getId(), last, Permissions.READ_ONLY);
+        try {
+            bp.resize(1, 50);
+            fail("expected DbException");
+        } catch (DbException expected) {
+        }
+        assertEquals(4, bp.getNumPages());
+        assertEquals(1, bp.getPinCount(last));
+
+        Thread unpinner = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            bp.unpinPage(t.getId(), last);
+        });
+        unpinner.start();
+        bp.resize(1, 5000);
+        unpinner.join();
+        assertEquals(1, bp.getNumPages());
+        assertEquals(1, bp.getNumCachedPages());
+        t.commit();
+    }
+
+    @Test public void testResizeUnderScans() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504*20, null, null);
+        BufferPool bp = Database.resetBufferPool(32, 4);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> scanners = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread s = new Thread(() -> {
+                try {
+                    for (int round = 0; round < 5; round++) {
+                        Transaction t = new Transaction();
+                        t.start();
+                        assertEquals(504*20, count(t.getId(), f));
+                        t.commit();
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            scanners.add(s);
+            s.start();
+        }
+        for (int i = 0; i < 10; i++) {
+            bp.resize(i % 2 == 0 ? 12 : 40);
+        }
+        for (Thread s : scanners) {
+            s.join();
+        }
+        assertNull(failure.get());
+        assertEquals(40, bp.getNumPages());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolResizeTest.class);
+    }
+}
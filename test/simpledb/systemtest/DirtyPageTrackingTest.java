@@ -0,0 +1,142 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Checks that the buffer pool completes a transaction by visiting only the
+ * pages it dirtied: commit writes them back together, abort puts back their
+ * before images without reading the disk.
+ */
+public class DirtyPageTrackingTest extends SimpleDbTestBase {
+    private static final int ROWS_PER_PAGE = 504;
+    private static final int PAGES = 5;
+
+    /** A HeapFile counting its page reads and writes. */
+    static class CountingHeapFile extends HeapFile {
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicInteger writeCalls = new AtomicInteger();
+        final AtomicInteger pagesWritten = new AtomicInteger();
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads.incrementAndGet();
+            return super.readPage(pid);
+        }
+
+        @Override
+        public void writePage(Page page) throws IOException {
+            writeCalls.incrementAndGet();
+            pagesWritten.incrementAndGet();
+            super.writePage(page);
+        }
+
+        @Override
+        public void writePages(List<Page> pages) throws IOException {
+            writeCalls.incrementAndGet();
+            pagesWritten.addAndGet(pages.size());
+            super.writePages(pages);
+        }
+    }
+
+    private static CountingHeapFile createTable() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS_PER_PAGE*PAGES, null, null);
+        CountingHeapFile counting = new CountingHeapFile(f.getFile(), f.getTupleDesc());
+        Database.getCatalog().addTable(counting, SystemTestUtil.getUUID());
+        return counting;
+    }
+
+    /** Delete the first row of each of the given pages on behalf of tid. */
+    private static void deleteFirstRows(TransactionId tid, HeapFile f, int... pageNos) throws Exception {
+        for (int pageNo : pageNos) {
+            HeapPage p = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(f.getId(), pageNo),
+                    Permissions.READ_ONLY);
+            Database.getBufferPool().deleteTuple(tid, p.iterator().next());
+        }
+    }
+
+    private static int count(HeapFile f) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        SeqScan ss = new SeqScan(t.getId(), f.getId(), "");
+        ss.open();
+        int n = 0;
+        while (ss.hasNext()) {
+            ss.next();
+            n++;
+        }
+        ss.close();
+        t.commit();
+        return n;
+    }
+
+    @Test public void testCommitWritesDirtiedPagesTogether() throws Exception {
+        CountingHeapFile f = createTable();
+        Database.resetBufferPool(2*PAGES);
+        Transaction t = new Transaction();
+        t.start();
+        deleteFirstRows(t.getId(), f, 1, 2, 4);
+        assertEquals(0, f.writeCalls.get());
+        t.commit();
+        assertEquals(1, f.writeCalls.get());
+        assertEquals(3, f.pagesWritten.get());
+
+        Database.resetBufferPool(2*PAGES);
+        assertEquals(ROWS_PER_PAGE*PAGES - 3, count(f));
+    }
+
+    @Test public void testAbortRestoresWithoutDiskReads() throws Exception {
+        CountingHeapFile f = createTable();
+        Database.resetBufferPool(2*PAGES);
+        assertEquals(ROWS_PER_PAGE*PAGES, count(f));
+        int reads = f.reads.get();
+
+        Transaction t = new Transaction();
+        t.start();
+        deleteFirstRows(t.getId(), f, 0, 3);
+        AbortEvictionTest.insertRow(f, t);
+        t.abort();
+        assertEquals(ROWS_PER_PAGE*PAGES, count(f));
+        assertEquals(reads, f.reads.get());
+        assertEquals(0, f.writeCalls.get());
+    }
+
+    @Test public void testFlushPagesWritesOnlyThatTransaction() throws Exception {
+        CountingHeapFile f = createTable();
+        BufferPool bp = Database.resetBufferPool(2*PAGES);
+        Transaction t1 = new Transaction();
+        t1.start();
+        Transaction t2 = new Transaction();
+        t2.start();
+        deleteFirstRows(t1.getId(), f, 1);
+        deleteFirstRows(t2.getId(), f, 3);
+        bp.flushPages(t1.getId());
+        assertEquals(1, f.pagesWritten.get());
+        t1.commit();
+        t2.commit();
+        assertEquals(2, f.pagesWritten.get());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DirtyPageTrackingTest.class);
+    }
+}
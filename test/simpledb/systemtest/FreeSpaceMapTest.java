@@ -0,0 +1,172 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.transaction.Transaction;
+
+/**
+ * Checks that inserts go straight to a page with room using the table's
+ * free-space map, and that the map follows deletes, aborts and restarts.
+ */
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+    private static final int PAGES = 20;
+
+    private static HeapFile fullTable() throws Exception {
+        return SystemTestUtil.createRandomHeapFile(2, 504*PAGES, null, null);
+    }
+
+    private static Tuple row() {
+        return Utility.getHeapTuple(new int[] { 1, 2 });
+    }
+
+    /** Delete the first row of page pageNo and commit. */
+    private static void freeSlot(HeapFile f, int pageNo) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        HeapPage p = (HeapPage) Database.getBufferPool().getPage(t.getId(), new HeapPageId(f.getId(), pageNo),
+                Permissions.READ_ONLY);
+        Database.getBufferPool().deleteTuple(t.getId(), p.iterator().next());
+        t.commit();
+    }
+
+    /** Insert a row, commit, and return the page it went to. */
+    private static int insert(HeapFile f) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        Tuple row = row();
+        Database.getBufferPool().insertTuple(t.getId(), f.getId(), row);
+        t.commit();
+        return row.getRecordId().getPageId().getPageNumber();
+    }
+
+    @Test public void testInsertGoesStraightToFreePage() throws Exception {
+        HeapFile f = fullTable();
+        BufferPool bp = Database.resetBufferPool(2*PAGES);
+        // the encoder wrote the map: no page has room
+        assertEquals(-1, f.getFreeSpaceMap().find(f.getTupleDesc().getSize(), f.numPages()));
+
+        freeSlot(f, 13);
+        assertEquals(f.getTupleDesc().getSize(), f.getFreeSpaceMap().get(13));
+        bp.resetStats();
+        assertEquals(13, insert(f));
+        // page 13 only, read then upgraded
+        assertEquals(2, bp.getHitCount() + bp.getMissCount());
+        assertEquals(0, f.getFreeSpaceMap().get(13));
+
+        // no room anywhere: a new page, found without visiting the full ones
+        bp.resetStats();
+        assertEquals(PAGES, insert(f));
+        assertEquals(1, bp.getHitCount() + bp.getMissCount());
+        assertEquals(PAGES + 1, f.numPages());
+    }
+
+    @Test public void testAbortRestoresEntries() throws Exception {
+        HeapFile f = fullTable();
+        Database.resetBufferPool(2*PAGES);
+        FreeSpaceMap fsm = f.getFreeSpaceMap();
+        freeSlot(f, 4);
+        int free = fsm.get(4);
+
+        // an aborted insert gives the room back
+        Transaction t = new Transaction();
+        t.start();
+        Database.getBufferPool().insertTuple(t.getId(), f.getId(), row());
+        assertEquals(0, fsm.get(4));
+        t.abort();
+        assertEquals(free, fsm.get(4));
+
+        // an aborted delete takes it away again
+        t = new Transaction();
+        t.start();
+        HeapPage p = (HeapPage) Database.getBufferPool().getPage(t.getId(), new HeapPageId(f.getId(), 7),
+                Permissions.READ_ONLY);
+        Database.getBufferPool().deleteTuple(t.getId(), p.iterator().next());
+        assertTrue(fsm.get(7) > 0);
+        t.abort();
+        assertEquals(0, fsm.get(7));
+
+        assertEquals(4, insert(f));
+    }
+
+    @Test public void testOptimisticDeleteLeavesEntry() throws Exception {
+        HeapFile f = fullTable();
+        Database.resetBufferPool(2*PAGES);
+        FreeSpaceMap fsm = f.getFreeSpaceMap();
+        Transaction t = new Transaction();
+        t.startOptimistic();
+        HeapPage p = (HeapPage) Database.getBufferPool().getPage(t.getId(), new HeapPageId(f.getId(), 5),
+                Permissions.READ_ONLY);
+        Database.getBufferPool().deleteTuple(t.getId(), p.iterator().next());
+        assertEquals(0, fsm.get(5));
+        t.abort();
+        assertEquals(0, fsm.get(5));
+    }
+
+    @Test public void testStaleEntryIsCorrected() throws Exception {
+        HeapFile f = fullTable();
+        Database.resetBufferPool(2*PAGES);
+        // a wrong entry sends the insert to a full page, which fixes it
+        f.getFreeSpaceMap().set(2, FreeSpaceMap.UNKNOWN);
+        assertEquals(PAGES, insert(f));
+        assertEquals(0, f.getFreeSpaceMap().get(2));
+    }
+
+    @Test public void testProbeKeepsLocksHeldBefore() throws Exception {
+        HeapFile f = fullTable();
+        BufferPool bp = Database.resetBufferPool(2*PAGES);
+        HeapPageId read = new HeapPageId(f.getId(), 2);
+        HeapPageId probed = new HeapPageId(f.getId(), 3);
+        f.getFreeSpaceMap().set(2, FreeSpaceMap.UNKNOWN);
+        f.getFreeSpaceMap().set(3, FreeSpaceMap.UNKNOWN);
+
+        Transaction t = new Transaction();
+        t.start();
+        bp.getPage(t.getId(), read, Permissions.READ_ONLY);
+        bp.insertTuple(t.getId(), f.getId(), row());
+        // both full: the lock taken for the probe alone is released
+        assertTrue(bp.holdsLock(t.getId(), read));
+        assertFalse(bp.holdsLock(t.getId(), probed));
+        t.commit();
+    }
+
+    @Test public void testMapSurvivesRestart() throws Exception {
+        HeapFile f = fullTable();
+        Database.resetBufferPool(2*PAGES);
+        freeSlot(f, 9);
+        freeSlot(f, 17);
+        assertEquals(9, insert(f));
+
+        // a new HeapFile over the same file loads the entries written at commit
+        HeapFile reopened = new HeapFile(f.getFile(), f.getTupleDesc());
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        BufferPool bp = Database.resetBufferPool(2*PAGES);
+        assertEquals(0, reopened.getFreeSpaceMap().get(9));
+        assertEquals(f.getTupleDesc().getSize(), reopened.getFreeSpaceMap().get(17));
+        bp.resetStats();
+        assertEquals(17, insert(reopened));
+        assertEquals(2, bp.getHitCount() + bp.getMissCount());
+    }
+
+    @Test public void testMapOfReplacedTableIsDropped() throws Exception {
+        HeapFile f = fullTable();
+        Database.resetBufferPool(2*PAGES);
+        // entries for more pages than the file has belong to an older table
+        f.getFreeSpaceMap().set(3*PAGES, 100);
+        f.getFreeSpaceMap().persist(0, 3*PAGES);
+        FreeSpaceMap fresh = new FreeSpaceMap(f.getFile(), f.numPages());
+        assertEquals(FreeSpaceMap.UNKNOWN, fresh.get(0));
+        fresh.close();
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
@@ -0,0 +1,76 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.storage.LogFile;
+import simpledb.transaction.Transaction;
+
+/**
+ * Commits from several threads at once and checks that they share log forces,
+ * while every commit still returns only after its record was forced.
+ */
+public class GroupCommitTest extends SimpleDbTestBase {
+    private static final int THREADS = 8;
+    private static final int COMMITS = 20;
+
+    @After public void resetWindow() {
+        Database.getLogFile().setGroupCommitWindow(0);
+    }
+
+    @Test public void testSingleCommitForces() throws Exception {
+        LogFile log = Database.getLogFile();
+        long forces = log.getForceCount();
+        Transaction t = new Transaction();
+        t.start();
+        t.commit();
+        assertEquals(forces + 1, log.getForceCount());
+    }
+
+    @Test public void testConcurrentCommitsShareForces() throws Exception {
+        LogFile log = Database.getLogFile();
+        log.setGroupCommitWindow(2000);
+        long forces = log.getForceCount();
+
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        List<Throwable> errors = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread th = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int c = 0; c < COMMITS; c++) {
+                        Transaction t = new Transaction();
+                        t.start();
+                        t.commit();
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads.add(th);
+            th.start();
+        }
+        for (Thread th : threads) {
+            th.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        long used = log.getForceCount() - forces;
+        assertTrue("forces: " + used, used > 0 && used < THREADS * COMMITS);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(GroupCommitTest.class);
+    }
+}
@@ -0,0 +1,205 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Checks that an optimistic transaction takes no locks and keeps its writes
+ * private while it runs, and that commit installs them only if nothing it
+ * read or wrote was changed by another commit meanwhile.
+ */
+public class OptimisticTransactionTest extends SimpleDbTestBase {
+
+    private static int count(TransactionId tid, HeapFile f) throws Exception {
+        SeqScan ss = new SeqScan(tid, f.getId(), "");
+        ss.open();
+        int n = 0;
+        while (ss.hasNext()) {
+            ss.next();
+            n++;
+        }
+        ss.close();
+        return n;
+    }
+
+    private static int countCommitted(HeapFile f) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        int n = count(t.getId(), f);
+        t.commit();
+        return n;
+    }
+
+    private void checkCommitInstallsWrites(boolean force) throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        Database.resetBufferPool(8).setForceOnCommit(force);
+        Transaction t = new Transaction();
+        t.startOptimistic();
+        AbortEvictionTest.insertRow(f, t);
+        assertEquals(11, count(t.getId(), f));
+        // other transactions do not see the write, nor wait for it
+        assertEquals(10, countCommitted(f));
+        t.commit();
+        assertEquals(11, countCommitted(f));
+    }
+
+    @Test public void testCommitInstallsWrites() throws Exception {
+        checkCommitInstallsWrites(true);
+    }
+
+    @Test public void testCommitInstallsWritesNoForce() throws Exception {
+        checkCommitInstallsWrites(false);
+    }
+
+    @Test public void testAbortDiscardsWrites() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        Database.resetBufferPool(8);
+        Transaction t = new Transaction();
+        t.startOptimistic();
+        AbortEvictionTest.insertRow(f, t);
+        t.abort();
+        assertEquals(10, countCommitted(f));
+    }
+
+    @Test public void testNoLocksBeforeValidation() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        BufferPool bp = Database.resetBufferPool(8);
+        HeapPageId pid = new HeapPageId(f.getId(), 0);
+        Transaction t = new Transaction();
+        t.startOptimistic();
+        assertTrue(bp.isOptimistic(t.getId()));
+        assertFalse(bp.isSnapshot(t.getId()));
+        bp.getPage(t.getId(), pid, Permissions.READ_WRITE);
+        assertFalse(bp.holdsLock(t.getId(), pid));
+
+        t.validate();
+        assertFalse(bp.isOptimistic(t.getId()));
+        assertTrue(bp.holdsLock(t.getId(), pid));
+        t.commit();
+        assertFalse(bp.holdsLock(t.getId(), pid));
+    }
+
+    @Test public void testWriteWriteConflict() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        Database.resetBufferPool(8);
+        Transaction first = new Transaction();
+        first.startOptimistic();
+        Transaction second = new Transaction();
+        second.startOptimistic();
+        AbortEvictionTest.insertRow(f, first);
+        AbortEvictionTest.insertRow(f, second);
+        first.commit();
+        try {
+            second.validate();
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException expected) {
+        }
+        second.abort();
+        assertEquals(11, countCommitted(f));
+    }
+
+    @Test public void testFailedValidationLeavesTransactionRunning() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        BufferPool bp = Database.resetBufferPool(8);
+        Transaction first = new Transaction();
+        first.startOptimistic();
+        Transaction second = new Transaction();
+        second.startOptimistic();
+        AbortEvictionTest.insertRow(f, first);
+        AbortEvictionTest.insertRow(f, second);
+        first.commit();
+
+        // committing through the pool reports the failure instead of aborting
+        assertFalse(bp.transactionComplete(second.getId(), true));
+        assertTrue(bp.isOptimistic(second.getId()));
+        second.abort();
+        assertEquals(11, countCommitted(f));
+    }
+
+    @Test public void testReadSetConflict() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 + 10, null, null);
+        BufferPool bp = Database.resetBufferPool(8);
+        Transaction reader = new Transaction();
+        reader.startOptimistic();
+        HeapPage page0 = (HeapPage) bp.getPage(reader.getId(), new HeapPageId(f.getId(), 0), Permissions.READ_ONLY);
+        Tuple first = page0.iterator().next();
+
+        // a 2PL transaction changes the page the optimistic one read
+        Transaction writer = new Transaction();
+        writer.start();
+        bp.deleteTuple(writer.getId(), first);
+        writer.commit();
+
+        // the optimistic one writes elsewhere, but what it read is stale
+        HeapPage page1 = (HeapPage) bp.getPage(reader.getId(), new HeapPageId(f.getId(), 1), Permissions.READ_ONLY);
+        bp.deleteTuple(reader.getId(), page1.iterator().next());
+        try {
+            reader.commit();
+            fail("expected IOException");
+        } catch (IOException expected) {
+        }
+        assertEquals(504 + 10 - 1, countCommitted(f));
+    }
+
+    @Test public void testValidationLocksOnlyWrites() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 + 10, null, null);
+        BufferPool bp = Database.resetBufferPool(8);
+        HeapPageId pid0 = new HeapPageId(f.getId(), 0);
+        HeapPageId pid1 = new HeapPageId(f.getId(), 1);
+        Transaction t = new Transaction();
+        t.startOptimistic();
+        bp.getPage(t.getId(), pid0, Permissions.READ_ONLY);
+        HeapPage page1 = (HeapPage) bp.getPage(t.getId(), pid1, Permissions.READ_ONLY);
+        bp.deleteTuple(t.getId(), page1.iterator().next());
+
+        // a locking transaction holding a page t only read does not hold t up
+        Transaction reader = new Transaction();
+        reader.start();
+        bp.getPage(reader.getId(), pid0, Permissions.READ_WRITE);
+        t.validate();
+        assertFalse(bp.holdsLock(t.getId(), pid0));
+        assertTrue(bp.holdsLock(t.getId(), pid1));
+        reader.commit();
+        t.commit();
+        assertEquals(504 + 10 - 1, countCommitted(f));
+    }
+
+    @Test public void testValidatedWritesFailLaterReaders() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        Database.resetBufferPool(8);
+        Transaction reader = new Transaction();
+        reader.startOptimistic();
+        assertEquals(10, count(reader.getId(), f));
+        Transaction writer = new Transaction();
+        writer.startOptimistic();
+        AbortEvictionTest.insertRow(f, writer);
+
+        // validated but not yet committed: the reader's read is already stale
+        writer.validate();
+        try {
+            reader.validate();
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException expected) {
+        }
+        reader.abort();
+        writer.commit();
+        assertEquals(11, countCommitted(f));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(OptimisticTransactionTest.class);
+    }
+}
@@ -0,0 +1,191 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+
+import org.junit.After;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.transaction.Transaction;
+
+/**
+ * Commits with NO FORCE and checks that the committed pages stay dirty in the
+ * pool until the page cleaner or eviction writes them back, and that pages of
+ * live transactions are never written, and that recovery redoes committed
+ * updates that were never written.
+ */
+public class PageCleanerTest extends SimpleDbTestBase {
+
+    @After public void stopCleaner() {
+        Database.getBufferPool().stopPageCleaner();
+    }
+
+    /** Count the rows inserted by AbortEvictionTest.insertRow in page. */
+    private static int countMagic(Page page) {
+        int n = 0;
+        Iterator<Tuple> it = ((HeapPage) page).iterator();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (((IntField) t.getField(0)).getValue() == -42 && ((IntField) t.getField(1)).getValue() == -43) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static int countMagicOnDisk(HeapFile f, int pageNo) {
+        return countMagic(f.readPage(new HeapPageId(f.getId(), pageNo)));
+    }
+
+    private static void insertAndCommit(HeapFile f) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        AbortEvictionTest.insertRow(f, t);
+        t.commit();
+    }
+
+    @Test public void testCommitDefersWrite() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        BufferPool bp = Database.resetBufferPool(4);
+        bp.setForceOnCommit(false);
+
+        insertAndCommit(f);
+        assertEquals(1, bp.getNumDirtyPages());
+        assertEquals(1, bp.getNumCommittedDirtyPages());
+        assertEquals(0, countMagicOnDisk(f, 0));
+
+        assertEquals(1, bp.cleanPages());
+        assertEquals(0, bp.getNumDirtyPages());
+        assertEquals(0, bp.getNumCommittedDirtyPages());
+        assertEquals(1, countMagicOnDisk(f, 0));
+    }
+
+    @Test public void testLivePagesNotWritten() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        BufferPool bp = Database.resetBufferPool(4);
+        bp.setForceOnCommit(false);
+        insertAndCommit(f);
+
+        Transaction t = new Transaction();
+        t.start();
+        AbortEvictionTest.insertRow(f, t);
+        assertEquals(0, bp.cleanPages());
+        assertEquals(1, bp.getNumCommittedDirtyPages());
+        assertEquals(0, countMagicOnDisk(f, 0));
+
+        t.commit();
+        assertEquals(1, bp.cleanPages());
+        assertEquals(2, countMagicOnDisk(f, 0));
+    }
+
+    @Test public void testAbortRestoresCommittedVersion() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        BufferPool bp = Database.resetBufferPool(4);
+        bp.setForceOnCommit(false);
+        insertAndCommit(f);
+
+        Transaction t = new Transaction();
+        t.start();
+        AbortEvictionTest.insertRow(f, t);
+        t.abort();
+
+        // the disk copy is stale, so the abort must not re-read it
+        Transaction check = new Transaction();
+        check.start();
+        assertEquals(1, countMagic(bp.getPage(check.getId(), new HeapPageId(f.getId(), 0), Permissions.READ_ONLY)));
+        check.commit();
+        assertEquals(1, bp.cleanPages());
+        assertEquals(1, countMagicOnDisk(f, 0));
+    }
+
+    @Test public void testEvictionWritesBack() throws Exception {
+        // page 0 full, so the row goes to page 1
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 + 10, null, null);
+        BufferPool bp = Database.resetBufferPool(1);
+        bp.setForceOnCommit(false);
+        insertAndCommit(f);
+        assertEquals(1, bp.getNumDirtyPages());
+
+        Transaction t = new Transaction();
+        t.start();
+        bp.getPage(t.getId(), new HeapPageId(f.getId(), 0), Permissions.READ_ONLY);
+        t.commit();
+        assertEquals(0, bp.getNumDirtyPages());
+        assertEquals(0, bp.getNumCommittedDirtyPages());
+        assertEquals(1, countMagicOnDisk(f, 1));
+    }
+
+    @Test public void testBackgroundCleaner() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        BufferPool bp = Database.resetBufferPool(4);
+        bp.setForceOnCommit(false);
+        bp.startPageCleaner(10);
+
+        insertAndCommit(f);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (bp.getNumDirtyPages() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, bp.getNumDirtyPages());
+        assertEquals(1, countMagicOnDisk(f, 0));
+    }
+
+    @Test public void testRecoverRedoesUnwrittenCommit() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        BufferPool bp = Database.resetBufferPool(4);
+        bp.setForceOnCommit(false);
+        insertAndCommit(f);
+
+        Transaction t = new Transaction();
+        t.start();
+        AbortEvictionTest.insertRow(f, t);
+        // the pool logs the commit before it releases t's locks, so a crash
+        // right after that cannot undo what other transactions may now see
+        bp.transactionComplete(t.getId(), true);
+        assertFalse(bp.holdsLock(t.getId(), new HeapPageId(f.getId(), 0)));
+        assertEquals(0, countMagicOnDisk(f, 0));
+
+        Database.reset();
+        HeapFile reopened = Utility.openHeapFile(2, f.getFile());
+        Database.getLogFile().recover();
+        assertEquals(2, countMagicOnDisk(reopened, 0));
+    }
+
+    @Test public void testRecoverStartsAtCheckpoint() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        HeapFile g = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        BufferPool bp = Database.resetBufferPool(4);
+        bp.setForceOnCommit(false);
+        Page original = f.readPage(new HeapPageId(f.getId(), 0));
+
+        // a live transaction keeps the records before the checkpoint in the log
+        Transaction live = new Transaction();
+        live.start();
+        insertAndCommit(f);
+        Database.getLogFile().logCheckpoint();
+        assertEquals(1, countMagicOnDisk(f, 0));
+        insertAndCommit(g);
+        assertEquals(0, countMagicOnDisk(g, 0));
+
+        // the checkpoint made f's update durable, so recovery must not replay
+        // it over a page written since
+        f.writePage(original);
+        Database.reset();
+        HeapFile reopenedF = Utility.openHeapFile(2, f.getFile());
+        HeapFile reopenedG = Utility.openHeapFile(2, g.getFile());
+        Database.getLogFile().recover();
+        assertEquals(0, countMagicOnDisk(reopenedF, 0));
+        assertEquals(1, countMagicOnDisk(reopenedG, 0));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageCleanerTest.class);
+    }
+}
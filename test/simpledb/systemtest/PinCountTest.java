@@ -0,0 +1,95 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.transaction.Transaction;
+
+/**
+ * Checks that getPinnedPage pins a page's frame until the page is unpinned
+ * or the transaction completes, and that eviction never picks a pinned frame.
+ */
+public class PinCountTest extends SimpleDbTestBase {
+
+    @Test public void testPinnedUntilUnpinned() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504*2, null, null);
+        BufferPool bp = Database.resetBufferPool(4);
+        HeapPageId pid = new HeapPageId(f.getId(), 0);
+        Transaction t = new Transaction();
+        t.start();
+        bp.getPinnedPage(t.getId(), pid, Permissions.READ_ONLY);
+        bp.getPinnedPage(t.getId(), pid, Permissions.READ_ONLY);
+        assertEquals(2, bp.getPinCount(pid));
+        bp.unpinPage(t.getId(), pid);
+        assertEquals(1, bp.getPinCount(pid));
+
+        // another transaction's unpin does not release t's pin
+        Transaction other = new Transaction();
+        other.start();
+        bp.unpinPage(other.getId(), pid);
+        assertEquals(1, bp.getPinCount(pid));
+        other.commit();
+
+        bp.getPinnedPage(t.getId(), new HeapPageId(f.getId(), 1), Permissions.READ_ONLY);
+        assertEquals(2, bp.getNumPinnedPages());
+        // plain getPage does not pin
+        bp.getPage(t.getId(), pid, Permissions.READ_ONLY);
+        assertEquals(1, bp.getPinCount(pid));
+        t.commit();
+        assertEquals(0, bp.getPinCount(pid));
+        assertEquals(0, bp.getNumPinnedPages());
+    }
+
+    @Test public void testPinnedPagesNotEvicted() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504*3, null, null);
+        BufferPool bp = Database.resetBufferPool(2);
+        Transaction t = new Transaction();
+        t.start();
+        HeapPageId p0 = new HeapPageId(f.getId(), 0);
+        bp.getPinnedPage(t.getId(), p0, Permissions.READ_ONLY);
+        bp.getPinnedPage(t.getId(), new HeapPageId(f.getId(), 1), Permissions.READ_ONLY);
+        try {
+            bp.getPage(t.getId(), new HeapPageId(f.getId(), 2), Permissions.READ_ONLY);
+            fail("expected DbException");
+        } catch (DbException expected) {
+        }
+
+        bp.unpinPage(t.getId(), p0);
+        bp.getPinnedPage(t.getId(), new HeapPageId(f.getId(), 2), Permissions.READ_ONLY);
+        assertEquals(0, bp.getPinCount(p0));
+        assertEquals(2, bp.getNumCachedPages());
+        assertEquals(2, bp.getNumPinnedPages());
+        t.commit();
+    }
+
+    @Test public void testScanUnpinsPagesItLeaves() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504*10, null, null);
+        BufferPool bp = Database.resetBufferPool(3);
+        Transaction t = new Transaction();
+        t.start();
+        SeqScan ss = new SeqScan(t.getId(), f.getId(), "");
+        ss.open();
+        int n = 0;
+        while (ss.hasNext()) {
+            ss.next();
+            n++;
+            assertTrue(bp.getNumPinnedPages() <= 1);
+        }
+        ss.close();
+        assertEquals(504*10, n);
+        assertEquals(0, bp.getNumPinnedPages());
+        t.commit();
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PinCountTest.class);
+    }
+}
@@ -0,0 +1,80 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+
+/**
+ * Checks that sequential heap file scans read pages ahead on the background
+ * I/O threads, both through the pool and through a scan ring, and still
+ * return every tuple exactly once.
+ */
+public class ReadAheadTest extends SimpleDbTestBase {
+
+    /** Counts the pages read on the caller thread and on I/O threads. */
+    static class CountingHeapFile extends HeapFile {
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicInteger ioReads = new AtomicInteger();
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads.incrementAndGet();
+            if (Thread.currentThread().getName().startsWith("simpledb-io")) {
+                ioReads.incrementAndGet();
+            }
+            return super.readPage(pid);
+        }
+    }
+
+    private CountingHeapFile createTable(int pages, List<List<Integer>> tuples) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * pages, 1000, null, tuples);
+        CountingHeapFile table = new CountingHeapFile(f, Utility.getTupleDesc(1));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        return table;
+    }
+
+    @Test public void testReadAheadIntoPool() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        CountingHeapFile table = createTable(30, tuples);
+        SystemTestUtil.matchTuples(table, tuples);
+        assertTrue(table.ioReads.get() > 0);
+        // read-ahead pages land in the pool: every page is read once
+        assertEquals(30, table.reads.get());
+    }
+
+    @Test public void testReadAheadIntoRing() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        CountingHeapFile table = createTable(100, tuples);
+        Database.resetBufferPool(16);
+        SystemTestUtil.matchTuples(table, tuples);
+        assertTrue(table.ioReads.get() > 0);
+    }
+
+    @Test public void testReadAheadOff() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        CountingHeapFile table = createTable(30, tuples);
+        Database.getBufferPool().setPrefetchPages(0);
+        SystemTestUtil.matchTuples(table, tuples);
+        assertEquals(0, table.ioReads.get());
+        assertEquals(30, table.reads.get());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
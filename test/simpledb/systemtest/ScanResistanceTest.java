@@ -0,0 +1,101 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.function.IntFunction;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Point lookups on a small hot table are interleaved with scans of a table
+ * much larger than the buffer pool, then one more scan runs on its own. A
+ * scan-resistant policy must still have the hot pages cached afterwards; the
+ * plain clock loses them.
+ */
+public class ScanResistanceTest extends SimpleDbTestBase {
+    private static final int BUFFER_PAGES = 16;
+    private static final int HOT_PAGES = 3;
+    private static final int COLD_PAGES = 100;
+
+    private HeapFile hot;
+    private HeapFile cold;
+
+    private long hotMissesAfterScan(IntFunction<ReplacementPolicy> policy) throws Exception {
+        hot = SystemTestUtil.createRandomHeapFile(2, HOT_PAGES * 504, null, null);
+        cold = SystemTestUtil.createRandomHeapFile(2, COLD_PAGES * 504, null, null);
+        BufferPool bp = Database.resetBufferPool(BUFFER_PAGES, 1, policy);
+
+        TransactionId tid = new TransactionId();
+        // warm up: lookups on the hot table while the cold table is scanned
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < cold.numPages(); i++) {
+                bp.getPage(tid, new HeapPageId(cold.getId(), i), Permissions.READ_ONLY);
+                if (i % 4 == 0) {
+                    readHot(bp, tid);
+                }
+            }
+        }
+        // a full scan with no lookups in between
+        for (int i = 0; i < cold.numPages(); i++) {
+            bp.getPage(tid, new HeapPageId(cold.getId(), i), Permissions.READ_ONLY);
+        }
+
+        bp.resetStats();
+        readHot(bp, tid);
+        long misses = bp.getMissCount();
+        assertEquals(HOT_PAGES, bp.getHitCount() + misses);
+        bp.transactionComplete(tid);
+        return misses;
+    }
+
+    private void readHot(BufferPool bp, TransactionId tid)
+            throws TransactionAbortedException, DbException {
+        for (int j = 0; j < hot.numPages(); j++) {
+            bp.getPage(tid, new HeapPageId(hot.getId(), j), Permissions.READ_ONLY);
+        }
+    }
+
+    @Test public void testClockLosesHotSet() throws Exception {
+        assertEquals(HOT_PAGES, hotMissesAfterScan(ClockPolicy::new));
+    }
+
+    @Test public void testLruKKeepsHotSet() throws Exception {
+        assertEquals(0, hotMissesAfterScan(LruKPolicy::new));
+    }
+
+    @Test public void testLruKVictimOrder() {
+        LruKPolicy policy = new LruKPolicy(3);
+        for (int frame = 0; frame < 3; frame++) {
+            policy.admit(frame, new HeapPageId(1, frame));
+        }
+        policy.touch(0);
+        // 1 and 2 have fewer than K references: least recently used first
+        assertEquals(1, policy.victim(frame -> true));
+        assertEquals(2, policy.victim(frame -> frame != 1));
+
+        policy.touch(1);
+        policy.touch(2);
+        // all referenced twice: oldest second reference first
+        assertEquals(0, policy.victim(frame -> true));
+        policy.remove(0);
+        assertEquals(1, policy.victim(frame -> true));
+        assertEquals(-1, policy.victim(frame -> false));
+    }
+
+    @Test public void testTwoQueueKeepsHotSet() throws Exception {
+        assertEquals(0, hotMissesAfterScan(TwoQueuePolicy::new));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ScanResistanceTest.class);
+    }
+}
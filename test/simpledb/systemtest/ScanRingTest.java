@@ -0,0 +1,60 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.execution.SeqScan;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageId;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Scans a table much larger than the buffer pool and checks that it went
+ * through a private ring: the pages cached before the scan are still cached
+ * afterwards, and the scan still took its page locks.
+ */
+public class ScanRingTest extends SimpleDbTestBase {
+    private static final int BUFFER_PAGES = 16;
+
+    @Test public void testLargeScanLeavesPoolAlone() throws Exception {
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(2, 4 * 504, null, null);
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 100 * 504, null, null);
+        BufferPool bp = Database.resetBufferPool(BUFFER_PAGES);
+        assertNull(bp.newScanRing(hot.numPages()));
+        assertNotNull(bp.newScanRing(big.numPages()));
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < hot.numPages(); i++) {
+            bp.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+        }
+
+        SeqScan scan = new SeqScan(tid, big.getId(), "");
+        scan.open();
+        int count = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            count++;
+        }
+        scan.close();
+        assertEquals(100 * 504, count);
+        assertTrue(bp.holdsLock(tid, new HeapPageId(big.getId(), big.numPages() - 1)));
+        assertEquals(hot.numPages(), bp.getNumCachedPages());
+
+        bp.resetStats();
+        for (int i = 0; i < hot.numPages(); i++) {
+            bp.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+        }
+        assertEquals(0, bp.getMissCount());
+        bp.transactionComplete(tid);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ScanRingTest.class);
+    }
+}
@@ -0,0 +1,166 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Checks that a snapshot transaction reads the database as committed when it
+ * started, whatever commits or uncommitted writes happen meanwhile, and that
+ * it neither takes locks nor may write.
+ */
+public class SnapshotReadTest extends SimpleDbTestBase {
+
+    private static int count(TransactionId tid, HeapFile f) throws Exception {
+        SeqScan ss = new SeqScan(tid, f.getId(), "");
+        ss.open();
+        int n = 0;
+        while (ss.hasNext()) {
+            ss.next();
+            n++;
+        }
+        ss.close();
+        return n;
+    }
+
+    private static void insertAndCommit(HeapFile f) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        AbortEvictionTest.insertRow(f, t);
+        t.commit();
+    }
+
+    private void checkIgnoresLaterCommits(boolean force) throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        Database.resetBufferPool(8).setForceOnCommit(force);
+        Transaction snap = new Transaction();
+        snap.startSnapshot();
+        assertEquals(10, count(snap.getId(), f));
+
+        insertAndCommit(f);
+        insertAndCommit(f);
+        assertEquals(10, count(snap.getId(), f));
+
+        Transaction later = new Transaction();
+        later.startSnapshot();
+        assertEquals(12, count(later.getId(), f));
+        snap.commit();
+        later.commit();
+    }
+
+    @Test public void testIgnoresLaterCommits() throws Exception {
+        checkIgnoresLaterCommits(true);
+    }
+
+    @Test public void testIgnoresLaterCommitsNoForce() throws Exception {
+        checkIgnoresLaterCommits(false);
+    }
+
+    @Test public void testNewPageNotVisible() throws Exception {
+        // page 0 full, so the row goes on a new page
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504, null, null);
+        Database.resetBufferPool(8);
+        Transaction snap = new Transaction();
+        snap.startSnapshot();
+        insertAndCommit(f);
+        assertEquals(2, f.numPages());
+        assertEquals(504, count(snap.getId(), f));
+        snap.commit();
+    }
+
+    @Test public void testUncommittedWriterNeitherBlocksNorShows() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        Database.resetBufferPool(8);
+        Transaction writer = new Transaction();
+        writer.start();
+        AbortEvictionTest.insertRow(f, writer);
+
+        // the writer holds an exclusive lock on page 0, a locking reader would wait
+        Transaction snap = new Transaction();
+        snap.startSnapshot();
+        assertEquals(10, count(snap.getId(), f));
+        writer.commit();
+        assertEquals(10, count(snap.getId(), f));
+        snap.commit();
+    }
+
+    @Test public void testTakesNoLocks() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        BufferPool bp = Database.resetBufferPool(8);
+        Transaction snap = new Transaction();
+        snap.startSnapshot();
+        assertTrue(bp.isSnapshot(snap.getId()));
+        HeapPageId pid = new HeapPageId(f.getId(), 0);
+        bp.getPage(snap.getId(), pid, Permissions.READ_ONLY);
+        assertFalse(bp.holdsLock(snap.getId(), pid));
+
+        // a writer gets the page's exclusive lock at once
+        Transaction writer = new Transaction();
+        writer.start();
+        bp.getPage(writer.getId(), pid, Permissions.READ_WRITE);
+        writer.commit();
+        snap.commit();
+        assertFalse(bp.isSnapshot(snap.getId()));
+    }
+
+    /**
+     * Scanning pages under a snapshot keeps no copies of them; versions kept
+     * for a snapshot while later commits change pages are dropped when it ends.
+     */
+    @Test public void testVersionsDroppedWhenSnapshotEnds() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 5000, null, null);
+        BufferPool bp = Database.resetBufferPool(4);
+        for (int i = 0; i < 3; i++) {
+            Transaction snap = new Transaction();
+            snap.startSnapshot();
+            assertEquals(5000, count(snap.getId(), f));
+            assertEquals(0, bp.getNumPageVersions());
+            snap.commit();
+        }
+
+        Transaction snap = new Transaction();
+        snap.startSnapshot();
+        assertEquals(5000, count(snap.getId(), f));
+        insertAndCommit(f);
+        assertEquals(1, bp.getNumPageVersions());
+        assertEquals(5000, count(snap.getId(), f));
+        snap.commit();
+        assertEquals(0, bp.getNumPageVersions());
+    }
+
+    @Test public void testWritesRejected() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        BufferPool bp = Database.resetBufferPool(8);
+        Transaction snap = new Transaction();
+        snap.startSnapshot();
+        try {
+            bp.getPage(snap.getId(), new HeapPageId(f.getId(), 0), Permissions.READ_WRITE);
+            fail("expected DbException");
+        } catch (DbException expected) {
+        }
+        Tuple t = new Tuple(Utility.getTupleDesc(2));
+        t.setField(0, new IntField(1));
+        t.setField(1, new IntField(2));
+        try {
+            bp.insertTuple(snap.getId(), f.getId(), t);
+            fail("expected DbException");
+        } catch (DbException expected) {
+        }
+        snap.commit();
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SnapshotReadTest.class);
+    }
+}
@@ -87,6 +87,7 @@ public class SystemTestUtil {
         File temp = File.createTempFile("table", ".dat");
         temp.deleteOnExit();
         HeapFileEncoder.convert(tuples, temp, BufferPool.getPageSize(), columns);
+        FreeSpaceMap.fileFor(temp).deleteOnExit();
         return temp;
     }
 